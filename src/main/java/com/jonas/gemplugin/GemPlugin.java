@@ -7,10 +7,16 @@ import com.jonas.gemplugin.listeners.BlockListener;
 import com.jonas.gemplugin.listeners.GemListener;
 import com.jonas.gemplugin.listeners.InventoryListener;
 import com.jonas.gemplugin.listeners.PlayerListener;
+import com.jonas.gemplugin.managers.CageMarkers;
 import com.jonas.gemplugin.managers.ConfigManager;
 import com.jonas.gemplugin.managers.CooldownManager;
 import com.jonas.gemplugin.managers.GemManager;
+import com.jonas.gemplugin.managers.PlayerNameIndex;
 import com.jonas.gemplugin.managers.TrustManager;
+import com.jonas.gemplugin.utils.BlockEditQueue;
+import com.jonas.gemplugin.utils.TickClock;
+import com.jonas.gemplugin.utils.TimingWheel;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
 /**
@@ -18,19 +24,49 @@ import org.bukkit.plugin.java.JavaPlugin;
  */
 public class GemPlugin extends JavaPlugin {
     
+    private TickClock tickClock;
+    private TimingWheel timingWheel;
+    private BlockEditQueue blockEditQueue;
+    private CageMarkers cageMarkers;
     private ConfigManager configManager;
     private CooldownManager cooldownManager;
     private TrustManager trustManager;
+    private PlayerNameIndex playerNameIndex;
     private GemManager gemManager;
     
     @Override
     public void onEnable() {
+        tickClock = TickClock.server();
+        
+        // One wheel, advanced once per tick, drives every timed gem expiration
+        timingWheel = new TimingWheel(getLogger());
+        getServer().getScheduler().runTaskTimer(this, timingWheel::advance, 1L, 1L);
+        
         // Initialize managers
         configManager = new ConfigManager(this);
+        
+        // Large block edits (ice cages) are spread over ticks within a time budget
+        blockEditQueue = new BlockEditQueue();
+        getServer().getScheduler().runTaskTimer(this,
+                () -> blockEditQueue.tick(configManager.getBlockEditBudgetMicros()), 1L, 1L);
+        
         cooldownManager = new CooldownManager(this);
         trustManager = new TrustManager(this);
+        playerNameIndex = new PlayerNameIndex(this);
         gemManager = new GemManager(this);
         
+        // Clear ice cages left behind by a crash in chunks that are already loaded;
+        // the rest are handled as their chunks load
+        cageMarkers = new CageMarkers(this);
+        cageMarkers.recoverLoadedChunks();
+        
+        // Populate the gem slot index and active gem cache for players already online (e.g., after /reload)
+        for (Player player : getServer().getOnlinePlayers()) {
+            gemManager.indexInventory(player);
+            gemManager.refreshActiveGem(player);
+            gemManager.syncPassiveEffects(player);
+        }
+        
         // Register commands
         registerCommands();
         
@@ -43,6 +79,10 @@ public class GemPlugin extends JavaPlugin {
     @Override
     public void onDisable() {
         // Cleanup
+        if (blockEditQueue != null) {
+            blockEditQueue.flush();
+        }
+        
         if (cooldownManager != null) {
             cooldownManager.cleanup();
         }
@@ -51,6 +91,10 @@ public class GemPlugin extends JavaPlugin {
             trustManager.saveTrusts();
         }
         
+        if (playerNameIndex != null) {
+            playerNameIndex.close();
+        }
+        
         getLogger().info("GemPlugin has been disabled!");
     }
     
@@ -59,8 +103,13 @@ public class GemPlugin extends JavaPlugin {
         getCommand("gem").setExecutor(gemCommand);
         getCommand("gem").setTabCompleter(gemCommand);
         
-        getCommand("trust").setExecutor(new TrustCommand(this));
-        getCommand("untrust").setExecutor(new UntrustCommand(this));
+        TrustCommand trustCommand = new TrustCommand(this);
+        getCommand("trust").setExecutor(trustCommand);
+        getCommand("trust").setTabCompleter(trustCommand);
+        
+        UntrustCommand untrustCommand = new UntrustCommand(this);
+        getCommand("untrust").setExecutor(untrustCommand);
+        getCommand("untrust").setTabCompleter(untrustCommand);
     }
     
     private void registerListeners() {
@@ -71,6 +120,22 @@ public class GemPlugin extends JavaPlugin {
     }
     
     // Getter methods for managers
+    public TickClock getTickClock() {
+        return tickClock;
+    }
+    
+    public TimingWheel getTimingWheel() {
+        return timingWheel;
+    }
+    
+    public BlockEditQueue getBlockEditQueue() {
+        return blockEditQueue;
+    }
+    
+    public CageMarkers getCageMarkers() {
+        return cageMarkers;
+    }
+    
     public ConfigManager getConfigManager() {
         return configManager;
     }
@@ -83,6 +148,10 @@ public class GemPlugin extends JavaPlugin {
         return trustManager;
     }
     
+    public PlayerNameIndex getPlayerNameIndex() {
+        return playerNameIndex;
+    }
+    
     public GemManager getGemManager() {
         return gemManager;
     }
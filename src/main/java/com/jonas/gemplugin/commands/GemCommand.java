@@ -21,7 +21,6 @@ import java.util.stream.Collectors;
 public class GemCommand implements CommandExecutor, TabCompleter {
     
     private final GemPlugin plugin;
-    private final List<String> gemTypes = Arrays.asList("strength", "fire", "speed", "ice", "invis", "astra");
     
     public GemCommand(GemPlugin plugin) {
         this.plugin = plugin;
@@ -71,8 +70,8 @@ public class GemCommand implements CommandExecutor, TabCompleter {
             return true;
         }
         
-        if (!gemTypes.contains(gemType)) {
-            sender.sendMessage("§cInvalid gem type! Valid types: " + String.join(", ", gemTypes));
+        if (!plugin.getGemManager().isGemType(gemType)) {
+            sender.sendMessage("§cInvalid gem type! Valid types: " + String.join(", ", plugin.getGemManager().getGemTypes()));
             return true;
         }
         
@@ -106,12 +105,13 @@ public class GemCommand implements CommandExecutor, TabCompleter {
         
         String gemType = args[1].toLowerCase();
         
-        if (!gemTypes.contains(gemType)) {
-            sender.sendMessage("§cInvalid gem type! Valid types: " + String.join(", ", gemTypes));
+        if (!plugin.getGemManager().isGemType(gemType)) {
+            sender.sendMessage("§cInvalid gem type! Valid types: " + String.join(", ", plugin.getGemManager().getGemTypes()));
             return true;
         }
         
         plugin.getConfigManager().setGemEnabled(gemType, true);
+        syncOnlinePassives();
         sender.sendMessage("§aEnabled " + gemType + " gem");
         
         return true;
@@ -125,12 +125,13 @@ public class GemCommand implements CommandExecutor, TabCompleter {
         
         String gemType = args[1].toLowerCase();
         
-        if (!gemTypes.contains(gemType)) {
-            sender.sendMessage("§cInvalid gem type! Valid types: " + String.join(", ", gemTypes));
+        if (!plugin.getGemManager().isGemType(gemType)) {
+            sender.sendMessage("§cInvalid gem type! Valid types: " + String.join(", ", plugin.getGemManager().getGemTypes()));
             return true;
         }
         
         plugin.getConfigManager().setGemEnabled(gemType, false);
+        syncOnlinePassives();
         sender.sendMessage("§aDisabled " + gemType + " gem");
         
         return true;
@@ -138,18 +139,29 @@ public class GemCommand implements CommandExecutor, TabCompleter {
     
     private boolean handleReload(CommandSender sender) {
         plugin.getConfigManager().reloadConfig();
+        plugin.getGemManager().rebuildPrototypes();
+        syncOnlinePassives();
         sender.sendMessage("§aConfiguration reloaded!");
         
         return true;
     }
     
+    /**
+     * Apply or remove passives after a gem's enabled state may have changed
+     */
+    private void syncOnlinePassives() {
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            plugin.getGemManager().syncPassiveEffects(player);
+        }
+    }
+    
     private void sendHelp(CommandSender sender) {
         sender.sendMessage("§6=== Gem Plugin Commands ===");
         sender.sendMessage("§e/gem give <player> <gem_type> §7- Give a gem to a player");
         sender.sendMessage("§e/gem enable <gem_type> §7- Enable a specific gem");
         sender.sendMessage("§e/gem disable <gem_type> §7- Disable a specific gem");
         sender.sendMessage("§e/gem reload §7- Reload configuration");
-        sender.sendMessage("§7Valid gem types: " + String.join(", ", gemTypes));
+        sender.sendMessage("§7Valid gem types: " + String.join(", ", plugin.getGemManager().getGemTypes()));
     }
     
     @Override
@@ -173,14 +185,14 @@ public class GemCommand implements CommandExecutor, TabCompleter {
                         .filter(s -> s.toLowerCase().startsWith(args[1].toLowerCase()))
                         .collect(Collectors.toList());
             } else if (subCommand.equals("enable") || subCommand.equals("disable")) {
-                return gemTypes.stream()
+                return plugin.getGemManager().getGemTypes().stream()
                         .filter(s -> s.startsWith(args[1].toLowerCase()))
                         .collect(Collectors.toList());
             }
         }
         
         if (args.length == 3 && args[0].equalsIgnoreCase("give")) {
-            return gemTypes.stream()
+            return plugin.getGemManager().getGemTypes().stream()
                     .filter(s -> s.startsWith(args[2].toLowerCase()))
                     .collect(Collectors.toList());
         }
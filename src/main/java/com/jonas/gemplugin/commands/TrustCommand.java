@@ -2,16 +2,20 @@ package com.jonas.gemplugin.commands;
 
 import com.jonas.gemplugin.GemPlugin;
 import com.jonas.gemplugin.utils.MessageUtils;
-import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
 /**
- * Handles the /trust command
+ * Handles the /trust command. Targets may be offline; names are resolved without blocking the tick.
  */
-public class TrustCommand implements CommandExecutor {
+public class TrustCommand implements CommandExecutor, TabCompleter {
     
     private final GemPlugin plugin;
     
@@ -34,21 +38,33 @@ public class TrustCommand implements CommandExecutor {
         }
         
         String targetName = args[0];
-        Player target = Bukkit.getPlayer(targetName);
-        
-        if (target == null) {
-            MessageUtils.sendError(player, "Player '" + targetName + "' not found!");
-            return true;
-        }
+        plugin.getPlayerNameIndex().resolve(player, targetName, target -> {
+            if (!player.isOnline()) return;
+            
+            if (target == null) {
+                MessageUtils.sendError(player, "Player '" + targetName + "' not found!");
+                return;
+            }
+            
+            if (target.uuid().equals(player.getUniqueId())) {
+                MessageUtils.sendError(player, "You cannot trust yourself!");
+                return;
+            }
+            
+            plugin.getTrustManager().addTrust(player, target.uuid());
+            MessageUtils.sendSuccess(player, "You now trust " + target.name());
+        });
         
-        if (target.getUniqueId().equals(player.getUniqueId())) {
-            MessageUtils.sendError(player, "You cannot trust yourself!");
-            return true;
+        return true;
+    }
+    
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+        if (!(sender instanceof Player) || args.length != 1) {
+            return new ArrayList<>();
         }
         
-        plugin.getTrustManager().addTrust(player, target);
-        MessageUtils.sendSuccess(player, "You now trust " + target.getName());
-        
-        return true;
+        UUID self = ((Player) sender).getUniqueId();
+        return plugin.getPlayerNameIndex().complete(args[0], entry -> !entry.uuid().equals(self));
     }
 }
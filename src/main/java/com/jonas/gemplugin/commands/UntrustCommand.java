@@ -2,16 +2,21 @@ package com.jonas.gemplugin.commands;
 
 import com.jonas.gemplugin.GemPlugin;
 import com.jonas.gemplugin.utils.MessageUtils;
-import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
 /**
- * Handles the /untrust command
+ * Handles the /untrust command. Targets may be offline; names are resolved without blocking the tick.
  */
-public class UntrustCommand implements CommandExecutor {
+public class UntrustCommand implements CommandExecutor, TabCompleter {
     
     private final GemPlugin plugin;
     
@@ -34,16 +39,29 @@ public class UntrustCommand implements CommandExecutor {
         }
         
         String targetName = args[0];
-        Player target = Bukkit.getPlayer(targetName);
+        plugin.getPlayerNameIndex().resolve(player, targetName, target -> {
+            if (!player.isOnline()) return;
+            
+            if (target == null) {
+                MessageUtils.sendError(player, "Player '" + targetName + "' not found!");
+                return;
+            }
+            
+            plugin.getTrustManager().removeTrust(player, target.uuid());
+            MessageUtils.sendSuccess(player, "You no longer trust " + target.name());
+        });
         
-        if (target == null) {
-            MessageUtils.sendError(player, "Player '" + targetName + "' not found!");
-            return true;
+        return true;
+    }
+    
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+        if (!(sender instanceof Player) || args.length != 1) {
+            return new ArrayList<>();
         }
         
-        plugin.getTrustManager().removeTrust(player, target);
-        MessageUtils.sendSuccess(player, "You no longer trust " + target.getName());
-        
-        return true;
+        // Only suggest players the sender actually trusts
+        Set<UUID> trusted = plugin.getTrustManager().getTrustedPlayers((Player) sender);
+        return plugin.getPlayerNameIndex().complete(args[0], entry -> trusted.contains(entry.uuid()));
     }
 }
@@ -1,6 +1,7 @@
 package com.jonas.gemplugin.gems;
 
 import com.jonas.gemplugin.GemPlugin;
+import com.jonas.gemplugin.managers.HostileTargets;
 import com.jonas.gemplugin.utils.MessageUtils;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
@@ -24,13 +25,18 @@ import java.util.*;
  */
 public class AstraGem extends Gem {
     
+    public static final int ID = 6;
+    public static final Material MATERIAL = Material.AMETHYST_SHARD;
+    
     private static final int INVISIBILITY_BUFFER_TICKS = 10; // Buffer to prevent flickering
     
+    private final int primaryAbility;
     private final Map<UUID, BukkitTask> passiveTasks = new HashMap<>();
     private final Set<UUID> currentlyInvisible = new HashSet<>();
     
     public AstraGem(GemPlugin plugin) {
         super(plugin);
+        this.primaryAbility = plugin.getCooldownManager().getAbilityId("astra_primary");
     }
     
     @Override
@@ -38,6 +44,11 @@ public class AstraGem extends Gem {
         return "astra";
     }
     
+    @Override
+    public int getId() {
+        return ID;
+    }
+    
     @Override
     public Component getDisplayName() {
         return Component.text("Astra Gem")
@@ -64,7 +75,7 @@ public class AstraGem extends Gem {
     
     @Override
     public Material getMaterial() {
-        return Material.AMETHYST_SHARD;
+        return MATERIAL;
     }
     
     @Override
@@ -84,8 +95,8 @@ public class AstraGem extends Gem {
     public void activatePrimary(Player player) {
         int cooldown = plugin.getConfigManager().getCooldown("astra", "primary");
         
-        if (plugin.getCooldownManager().hasCooldown(player, "astra_primary")) {
-            int remaining = plugin.getCooldownManager().getRemainingCooldown(player, "astra_primary");
+        int remaining = plugin.getCooldownManager().remaining(player, primaryAbility);
+        if (remaining > 0) {
             MessageUtils.sendError(player, "Ability on cooldown! " + remaining + "s remaining");
             return;
         }
@@ -96,7 +107,7 @@ public class AstraGem extends Gem {
         MessageUtils.sendSuccess(player, "Beam fired!");
         
         // Set cooldown
-        plugin.getCooldownManager().setCooldown(player, "astra_primary", cooldown);
+        plugin.getCooldownManager().setCooldown(player, primaryAbility, cooldown);
     }
     
     /**
@@ -179,6 +190,7 @@ public class AstraGem extends Gem {
         double beamWidth = 1.0;
         
         // Raycast to find entities
+        HostileTargets hostile = plugin.getTrustManager().getHostileTargets(player);
         RayTraceResult result = world.rayTrace(
                 eyeLocation,
                 direction,
@@ -186,20 +198,8 @@ public class AstraGem extends Gem {
                 FluidCollisionMode.NEVER,
                 true,
                 beamWidth,
-                entity -> {
-                    if (!(entity instanceof LivingEntity)) return false;
-                    if (entity.getUniqueId().equals(player.getUniqueId())) return false;
-                    
-                    // Check trust system
-                    if (entity instanceof Player) {
-                        Player target = (Player) entity;
-                        if (plugin.getTrustManager().isTrusted(player, target)) {
-                            return false;
-                        }
-                    }
-                    
-                    return true;
-                }
+                // Skips the caster and trusted players
+                entity -> entity instanceof LivingEntity && hostile.isHostile(entity)
         );
         
         // Draw beam particles
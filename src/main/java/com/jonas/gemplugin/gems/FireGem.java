@@ -1,6 +1,7 @@
 package com.jonas.gemplugin.gems;
 
 import com.jonas.gemplugin.GemPlugin;
+import com.jonas.gemplugin.managers.HostileTargets;
 import com.jonas.gemplugin.utils.MessageUtils;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
@@ -24,11 +25,16 @@ import java.util.*;
  */
 public class FireGem extends Gem {
     
+    public static final int ID = 2;
+    public static final Material MATERIAL = Material.BLAZE_POWDER;
+    
+    private final int primaryAbility;
     private final Map<UUID, BukkitTask> activeAuras = new HashMap<>();
     private final Random random = new Random();
     
     public FireGem(GemPlugin plugin) {
         super(plugin);
+        this.primaryAbility = plugin.getCooldownManager().getAbilityId("fire_primary");
     }
     
     @Override
@@ -36,6 +42,11 @@ public class FireGem extends Gem {
         return "fire";
     }
     
+    @Override
+    public int getId() {
+        return ID;
+    }
+    
     @Override
     public Component getDisplayName() {
         return Component.text("Fire Gem")
@@ -63,7 +74,7 @@ public class FireGem extends Gem {
     
     @Override
     public Material getMaterial() {
-        return Material.BLAZE_POWDER;
+        return MATERIAL;
     }
     
     @Override
@@ -83,8 +94,8 @@ public class FireGem extends Gem {
         int duration = plugin.getConfigManager().getDuration("fire", "primary");
         int cooldown = plugin.getConfigManager().getCooldown("fire", "primary");
         
-        if (plugin.getCooldownManager().hasCooldown(player, "fire_primary")) {
-            int remaining = plugin.getCooldownManager().getRemainingCooldown(player, "fire_primary");
+        int remaining = plugin.getCooldownManager().remaining(player, primaryAbility);
+        if (remaining > 0) {
             MessageUtils.sendError(player, "Ability on cooldown! " + remaining + "s remaining");
             return;
         }
@@ -93,7 +104,7 @@ public class FireGem extends Gem {
         MessageUtils.sendSuccess(player, "Fire Aura activated!");
         
         // Set cooldown
-        plugin.getCooldownManager().setCooldown(player, "fire_primary", cooldown);
+        plugin.getCooldownManager().setCooldown(player, primaryAbility, cooldown);
     }
     
     @Override
@@ -127,13 +138,12 @@ public class FireGem extends Gem {
                 World world = player.getWorld();
                 
                 // Set enemies on fire and drain water
+                HostileTargets hostile = plugin.getTrustManager().getHostileTargets(player);
                 for (Entity entity : world.getNearbyEntities(loc, 3, 3, 3)) {
                     if (entity instanceof Player) {
-                        Player target = (Player) entity;
-                        if (target.getUniqueId().equals(player.getUniqueId())) continue;
-                        if (plugin.getTrustManager().isTrusted(player, target)) continue;
+                        if (!hostile.isHostile(entity)) continue;
                         
-                        target.setFireTicks(60);
+                        entity.setFireTicks(60);
                     } else if (entity instanceof LivingEntity) {
                         LivingEntity target = (LivingEntity) entity;
                         target.setFireTicks(60);
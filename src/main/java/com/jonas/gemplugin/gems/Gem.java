@@ -1,6 +1,8 @@
 package com.jonas.gemplugin.gems;
 
 import com.jonas.gemplugin.GemPlugin;
+import com.jonas.gemplugin.utils.TickClock;
+import com.jonas.gemplugin.utils.TimingWheel;
 import net.kyori.adventure.text.Component;
 import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
@@ -12,6 +14,8 @@ import org.bukkit.persistence.PersistentDataType;
 import org.bukkit.potion.PotionEffect;
 import org.bukkit.potion.PotionEffectType;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -22,12 +26,19 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public abstract class Gem {
     
+    /**
+     * How far (in ticks) a live effect's expiry may drift from the recorded one and still count as ours
+     */
+    private static final long EFFECT_EXPIRY_TOLERANCE_TICKS = 2L;
+    
     protected final GemPlugin plugin;
+    // Every map created by timerMap()
+    private final List<Map<UUID, TimingWheel.Timer>> timerMaps = new ArrayList<>();
     
     /**
      * Tracks expiry times for gem-applied effects to prevent removing unrelated effects
      * Key: UUID of player
-     * Value: Map of PotionEffectType to expiry time in milliseconds
+     * Value: Map of PotionEffectType to expiry tick
      */
     protected static final Map<UUID, Map<PotionEffectType, Long>> gemAppliedEffectExpiry = new ConcurrentHashMap<>();
     
@@ -40,6 +51,11 @@ public abstract class Gem {
      */
     public abstract String getName();
     
+    /**
+     * Get the gem's stable numeric ID (stored on gem items, must be 1-127 and never reused)
+     */
+    public abstract int getId();
+    
     /**
      * Get the gem's display name
      */
@@ -99,6 +115,62 @@ public abstract class Gem {
         cleanupGemEffects(player);
     }
     
+    /**
+     * Create a map for per-player expiry timers, registered so {@link #forgetTimers(UUID)} clears it
+     */
+    protected Map<UUID, TimingWheel.Timer> timerMap() {
+        Map<UUID, TimingWheel.Timer> timers = new HashMap<>();
+        timerMaps.add(timers);
+        return timers;
+    }
+    
+    /**
+     * Drop a player's entries from every timer map, once the wheel has cancelled their timers
+     * (e.g., on quit)
+     */
+    public void forgetTimers(UUID playerId) {
+        for (Map<UUID, TimingWheel.Timer> timers : timerMaps) {
+            timers.remove(playerId);
+        }
+    }
+    
+    /**
+     * Run a task after the given number of ticks, keeping its timer in the map under the player.
+     * If the player already has a pending timer there it is moved instead of duplicated.
+     * The timer belongs to the player's session and is cancelled when they leave.
+     */
+    protected void scheduleExpiry(Map<UUID, TimingWheel.Timer> timers, Player player, long ticks, Runnable onExpire) {
+        UUID playerId = player.getUniqueId();
+        TimingWheel.Timer timer = timers.get(playerId);
+        if (timer != null && timer.isPending()) {
+            plugin.getTimingWheel().reschedule(timer, ticks);
+            return;
+        }
+        
+        timers.put(playerId, plugin.getTimingWheel().schedule(playerId, ticks, () -> {
+            timers.remove(playerId);
+            onExpire.run();
+        }));
+    }
+    
+    /**
+     * Check if the player has a pending timer in the map
+     */
+    protected boolean hasPendingExpiry(Map<UUID, TimingWheel.Timer> timers, Player player) {
+        TimingWheel.Timer timer = timers.get(player.getUniqueId());
+        return timer != null && timer.isPending();
+    }
+    
+    /**
+     * Cancel the player's timer in the map, if any
+     */
+    protected void cancelExpiry(Map<UUID, TimingWheel.Timer> timers, Player player) {
+        TimingWheel.Timer timer = timers.remove(player.getUniqueId());
+        if (timer != null) {
+            plugin.getTimingWheel().cancel(timer);
+        }
+    }
+    
     /**
      * Applies a gem effect to the player without overriding stronger existing effects.
      * Tracks the effect expiry time for proper cleanup.
@@ -115,19 +187,17 @@ public abstract class Gem {
             UUID playerId = player.getUniqueId();
             PotionEffectType effectType = effect.getType();
             
-            // Calculate expiry time in milliseconds
-            long expiryMillis;
-            if (effect.getDuration() == PotionEffect.INFINITE_DURATION) {
-                expiryMillis = Long.MAX_VALUE;
-            } else {
-                expiryMillis = System.currentTimeMillis() + (effect.getDuration() * 50L);
-            }
+            // Calculate the expiry tick
+            long expiryTick = effectExpiryTick(effect);
             
             // Store the expiry time
             gemAppliedEffectExpiry.computeIfAbsent(playerId, k -> new ConcurrentHashMap<>())
-                    .put(effectType, expiryMillis);
+                    .put(effectType, expiryTick);
             
-            // Set PDC marker for gem-applied effects
+            // Set PDC marker for gem-applied effects. It outlives restarts, when tick numbers
+            // start over, so it holds the wall-clock expiry instead of the tick
+            long expiryMillis = expiryTick == Long.MAX_VALUE ? Long.MAX_VALUE
+                    : System.currentTimeMillis() + effect.getDuration() * TickClock.MILLIS_PER_TICK;
             PersistentDataContainer pdc = player.getPersistentDataContainer();
             NamespacedKey key = new NamespacedKey(plugin, "gem_effect_" + effectType.getKey().getKey());
             pdc.set(key, PersistentDataType.LONG, expiryMillis);
@@ -148,22 +218,16 @@ public abstract class Gem {
         Map<PotionEffectType, Long> playerEffects = gemAppliedEffectExpiry.get(playerId);
         
         if (playerEffects != null && playerEffects.containsKey(effectType)) {
-            long gemExpiryTime = playerEffects.get(effectType);
-            long currentTime = System.currentTimeMillis();
+            long gemExpiryTick = playerEffects.get(effectType);
             
             // Check if the gem effect is still active (not expired)
             PotionEffect currentEffect = player.getPotionEffect(effectType);
             if (currentEffect != null) {
-                long currentEffectExpiry;
-                if (currentEffect.getDuration() == PotionEffect.INFINITE_DURATION) {
-                    currentEffectExpiry = Long.MAX_VALUE;
-                } else {
-                    currentEffectExpiry = currentTime + (currentEffect.getDuration() * 50L);
-                }
+                long currentEffectExpiry = effectExpiryTick(currentEffect);
                 
                 // Only remove if the current effect matches our gem effect expiry (within a tolerance)
                 // This prevents removing effects that were applied by other sources
-                if (Math.abs(currentEffectExpiry - gemExpiryTime) < 1000) {
+                if (Math.abs(currentEffectExpiry - gemExpiryTick) <= EFFECT_EXPIRY_TOLERANCE_TICKS) {
                     player.removePotionEffect(effectType);
                 }
             } else {
@@ -183,6 +247,16 @@ public abstract class Gem {
         }
     }
     
+    /**
+     * Get the tick at which an effect ends, or Long.MAX_VALUE for infinite effects
+     */
+    private long effectExpiryTick(PotionEffect effect) {
+        if (effect.getDuration() == PotionEffect.INFINITE_DURATION) {
+            return Long.MAX_VALUE;
+        }
+        return plugin.getTickClock().currentTick() + effect.getDuration();
+    }
+    
     /**
      * Cleans up all gem-applied effects for a player.
      * This should be called when a player logs out or when all gem effects need to be removed.
@@ -1,18 +1,29 @@
 package com.jonas.gemplugin.gems;
 
 import com.jonas.gemplugin.GemPlugin;
+import com.jonas.gemplugin.managers.HostileTargets;
+import com.jonas.gemplugin.utils.BlockEditQueue;
+import com.jonas.gemplugin.utils.BlockIndex;
+import com.jonas.gemplugin.utils.BlockKey;
+import com.jonas.gemplugin.utils.LongHashSet;
 import com.jonas.gemplugin.utils.MessageUtils;
+import com.jonas.gemplugin.utils.ShapeOffsets;
+import com.jonas.gemplugin.utils.TimingWheel;
+import io.papermc.paper.math.Position;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 import net.kyori.adventure.text.format.TextDecoration;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.LivingEntity;
 import org.bukkit.entity.Player;
 import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
 import org.bukkit.potion.PotionEffect;
 import org.bukkit.potion.PotionEffectType;
 import org.bukkit.scheduler.BukkitTask;
@@ -26,12 +37,23 @@ import java.util.*;
  */
 public class IceGem extends Gem {
     
-    private final Map<UUID, BukkitTask> speedTasks = new HashMap<>();
+    public static final int ID = 4;
+    public static final Material MATERIAL = Material.ICE;
+    // Extra lifetime of crash-recovery markers beyond the cage duration
+    private static final int MARKER_GRACE_SECONDS = 60;
+    
+    private final int primaryAbility;
+    // Pending removal of the ice speed boost per player
+    private final Map<UUID, TimingWheel.Timer> speedTimers = timerMap();
     private final Map<UUID, IceCage> activeCages = new HashMap<>();
-    private final Set<String> allCageBlocks = new HashSet<>();
+    // Number of active client-side cages, so movement checks can bail out early
+    private int clientCageCount;
+    // Every block of every active cage, checked by the block listener on each block event
+    private final BlockIndex cageIndex = new BlockIndex();
     
     public IceGem(GemPlugin plugin) {
         super(plugin);
+        this.primaryAbility = plugin.getCooldownManager().getAbilityId("ice_primary");
     }
     
     @Override
@@ -39,6 +61,11 @@ public class IceGem extends Gem {
         return "ice";
     }
     
+    @Override
+    public int getId() {
+        return ID;
+    }
+    
     @Override
     public Component getDisplayName() {
         return Component.text("Ice Gem")
@@ -57,7 +84,7 @@ public class IceGem extends Gem {
                 Component.text(""),
                 Component.text("Primary Ability (Press F):").color(NamedTextColor.GOLD).decoration(TextDecoration.ITALIC, false),
                 Component.text("• Creates indestructible ice cage").color(NamedTextColor.GRAY).decoration(TextDecoration.ITALIC, false),
-                Component.text("• 4-block radius").color(NamedTextColor.GRAY).decoration(TextDecoration.ITALIC, false),
+                Component.text("• " + plugin.getConfigManager().getIceCageRadius() + "-block radius").color(NamedTextColor.GRAY).decoration(TextDecoration.ITALIC, false),
                 Component.text("• Enemies get Slowness II").color(NamedTextColor.GRAY).decoration(TextDecoration.ITALIC, false),
                 Component.text("• Duration: 20 seconds").color(NamedTextColor.GRAY).decoration(TextDecoration.ITALIC, false),
                 Component.text("• Cooldown: 60 seconds").color(NamedTextColor.GRAY).decoration(TextDecoration.ITALIC, false)
@@ -66,7 +93,7 @@ public class IceGem extends Gem {
     
     @Override
     public Material getMaterial() {
-        return Material.ICE;
+        return MATERIAL;
     }
     
     @Override
@@ -77,7 +104,7 @@ public class IceGem extends Gem {
     @Override
     public void removePassiveEffects(Player player) {
         removeGemEffect(player, PotionEffectType.SPEED);
-        cancelSpeedTask(player);
+        cancelExpiry(speedTimers, player);
         removeCage(player);
     }
     
@@ -86,8 +113,8 @@ public class IceGem extends Gem {
         int duration = plugin.getConfigManager().getDuration("ice", "primary");
         int cooldown = plugin.getConfigManager().getCooldown("ice", "primary");
         
-        if (plugin.getCooldownManager().hasCooldown(player, "ice_primary")) {
-            int remaining = plugin.getCooldownManager().getRemainingCooldown(player, "ice_primary");
+        int remaining = plugin.getCooldownManager().remaining(player, primaryAbility);
+        if (remaining > 0) {
             MessageUtils.sendError(player, "Ability on cooldown! " + remaining + "s remaining");
             return;
         }
@@ -96,7 +123,7 @@ public class IceGem extends Gem {
         MessageUtils.sendSuccess(player, "Ice Cage created!");
         
         // Set cooldown
-        plugin.getCooldownManager().setCooldown(player, "ice_primary", cooldown);
+        plugin.getCooldownManager().setCooldown(player, primaryAbility, cooldown);
     }
     
     @Override
@@ -117,32 +144,12 @@ public class IceGem extends Gem {
      * Apply Speed IV for 3 seconds, resetting the timer if already active
      */
     private void applySpeedEffect(Player player) {
-        // Cancel existing task if any
-        cancelSpeedTask(player);
-        
         // Apply Speed IV
         applyGemEffect(player, new PotionEffect(PotionEffectType.SPEED, 
                 60, 3, false, false, true)); // 60 ticks = 3 seconds
         
-        // Schedule removal after 3 seconds
-        BukkitTask task = Bukkit.getScheduler().runTaskLater(plugin, () -> {
-            if (player.isOnline()) {
-                removeGemEffect(player, PotionEffectType.SPEED);
-            }
-            speedTasks.remove(player.getUniqueId());
-        }, 60L); // 60 ticks = 3 seconds
-        
-        speedTasks.put(player.getUniqueId(), task);
-    }
-    
-    /**
-     * Cancel the speed removal task
-     */
-    private void cancelSpeedTask(Player player) {
-        BukkitTask task = speedTasks.remove(player.getUniqueId());
-        if (task != null) {
-            task.cancel();
-        }
+        // Schedule removal after 3 seconds, pushing back the pending one if any
+        scheduleExpiry(speedTimers, player, 60L, () -> removeGemEffect(player, PotionEffectType.SPEED));
     }
     
     private boolean isIceBlock(Block block) {
@@ -153,41 +160,52 @@ public class IceGem extends Gem {
                type == Material.FROSTED_ICE;
     }
     
-    /**
-     * Create a unique string key for a location based on world and block coordinates
-     */
-    private String getLocationKey(Location loc) {
-        String worldName = loc.getWorld() != null ? loc.getWorld().getName() : "unknown";
-        return worldName + ":" + loc.getBlockX() + ":" + loc.getBlockY() + ":" + loc.getBlockZ();
-    }
-    
     private void createIceCage(Player player, int duration) {
         removeCage(player);
         
         Location center = player.getLocation();
-        List<Location> cageBlocks = new ArrayList<>();
-        int radius = 4;
+        World world = center.getWorld();
+        int centerX = center.getBlockX();
+        int centerY = center.getBlockY();
+        int centerZ = center.getBlockZ();
+        int radius = plugin.getConfigManager().getIceCageRadius();
+        int[] shell = ShapeOffsets.get(ShapeOffsets.Shape.SHELL, radius);
+        long[] shellBlocks = new long[shell.length / 3];
+        for (int i = 0; i < shell.length; i += 3) {
+            shellBlocks[i / 3] = BlockKey.pack(centerX + shell[i], centerY + shell[i + 1], centerZ + shell[i + 2]);
+        }
         
-        // Create spherical cage
-        for (int x = -radius; x <= radius; x++) {
-            for (int y = -radius; y <= radius; y++) {
-                for (int z = -radius; z <= radius; z++) {
-                    double distance = Math.sqrt(x*x + y*y + z*z);
-                    if (distance >= radius - 0.5 && distance <= radius + 0.5) {
-                        Location blockLoc = center.clone().add(x, y, z);
-                        Block block = blockLoc.getBlock();
-                        if (block.getType() == Material.AIR) {
-                            cageBlocks.add(blockLoc);
-                            allCageBlocks.add(getLocationKey(blockLoc));
-                            block.setType(Material.HONEY_BLOCK);
-                        }
-                    }
+        IceCage cage = new IceCage(world, centerX + 0.5, centerY + 0.5, centerZ + 0.5, radius);
+        if (plugin.getConfigManager().isClientSideIceCage()) {
+            // Fake blocks over air only, in chunks that are already loaded
+            cage.fakeBlocks = new HashMap<>();
+            BlockData honey = Material.HONEY_BLOCK.createBlockData();
+            for (long key : shellBlocks) {
+                int x = BlockKey.x(key);
+                int y = BlockKey.y(key);
+                int z = BlockKey.z(key);
+                if (world.isChunkLoaded(x >> 4, z >> 4) && world.getType(x, y, z) == Material.AIR) {
+                    cage.fakeBlocks.put(Position.block(x, y, z), honey);
                 }
             }
+            clientCageCount++;
+        } else {
+            // Create spherical cage over the next ticks, filling air only; nothing depends on
+            // the air being replaced, so neighbour updates are skipped
+            // Each block is also marked in its chunk, so a crash cannot leave the cage behind
+            long expiryMillis = System.currentTimeMillis() + (duration + MARKER_GRACE_SECONDS) * 1000L;
+            cage.placement = plugin.getBlockEditQueue().submit(world, shellBlocks, shellBlocks.length,
+                    Material.AIR, Material.HONEY_BLOCK, false, (key, applied) -> {
+                        if (applied) {
+                            cage.blocks.add(key);
+                            cageIndex.add(world, key);
+                            plugin.getCageMarkers().mark(world, key, expiryMillis);
+                        }
+                    });
         }
         
         // Apply slowness to enemies
-        BukkitTask task = Bukkit.getScheduler().runTaskTimer(plugin, new Runnable() {
+        cage.task = Bukkit.getScheduler().runTaskTimer(plugin, new Runnable() {
             int ticksRemaining = duration * 20;
             
             @Override
@@ -200,13 +218,19 @@ public class IceGem extends Gem {
                     return;
                 }
                 
+                // Resend fake blocks every pass: reaches players who came close since and repairs
+                // blocks a client dropped (e.g., after reloading the chunk)
+                if (cage.fakeBlocks != null) {
+                    showFakeBlocks(cage);
+                }
+                
                 // Apply slowness to enemies inside
+                HostileTargets hostile = plugin.getTrustManager().getHostileTargets(player);
                 for (Entity entity : center.getWorld().getNearbyEntities(center, radius, radius, radius)) {
                     if (entity instanceof Player) {
-                        Player target = (Player) entity;
-                        if (target.getUniqueId().equals(player.getUniqueId())) continue;
-                        if (plugin.getTrustManager().isTrusted(player, target)) continue;
+                        if (!hostile.isHostile(entity)) continue;
                         
+                        Player target = (Player) entity;
                         target.addPotionEffect(new PotionEffect(PotionEffectType.SLOWNESS, 
                                 40, 1, false, false, true));
                     } else if (entity instanceof LivingEntity) {
@@ -220,44 +244,176 @@ public class IceGem extends Gem {
             }
         }, 0L, 20L);
         
-        activeCages.put(player.getUniqueId(), new IceCage(cageBlocks, task));
+        activeCages.put(player.getUniqueId(), cage);
     }
     
     private void removeCage(Player player) {
         IceCage cage = activeCages.remove(player.getUniqueId());
         if (cage != null) {
             cage.task.cancel();
-            for (Location loc : cage.blocks) {
-                allCageBlocks.remove(getLocationKey(loc));
-                Block block = loc.getBlock();
-                if (block.getType() == Material.HONEY_BLOCK) {
-                    block.setType(Material.AIR);
-                }
+            if (cage.fakeBlocks != null) {
+                clientCageCount--;
+                hideFakeBlocks(cage);
+                return;
             }
+            cage.placement.cancel();
+            
+            // Blocks stay protected until their removal comes up; removal updates neighbours
+            // so anything resting on the cage reacts
+            long[] placed = cage.blocks.toArray();
+            int[] left = {placed.length};
+            plugin.getBlockEditQueue().submit(cage.world, placed, placed.length,
+                    Material.HONEY_BLOCK, Material.AIR, true, (key, applied) -> {
+                        cageIndex.remove(cage.world, key);
+                        plugin.getCageMarkers().unmark(cage.world, key);
+                        if (--left[0] == 0) {
+                            // Once the whole cage is gone, drop its chunks from the index's filter
+                            cageIndex.removeAll(cage.world, placed);
+                        }
+                    });
+        }
+    }
+    
+    /**
+     * Send a client-side cage to every player close enough to see it
+     */
+    private void showFakeBlocks(IceCage cage) {
+        double range = Bukkit.getViewDistance() * 16.0;
+        for (Player viewer : cage.world.getPlayers()) {
+            if (cage.distanceSquared(viewer.getLocation()) > range * range) continue;
+            viewer.sendMultiBlockChange(cage.fakeBlocks);
+            cage.viewers.add(viewer.getUniqueId());
         }
     }
     
+    /**
+     * Show the real blocks again to everyone who was sent a client-side cage
+     */
+    private void hideFakeBlocks(IceCage cage) {
+        Map<Position, BlockData> real = new HashMap<>();
+        for (Position position : cage.fakeBlocks.keySet()) {
+            real.put(position, cage.world.getBlockData(position.blockX(), position.blockY(), position.blockZ()));
+        }
+        for (UUID uuid : cage.viewers) {
+            Player viewer = Bukkit.getPlayer(uuid);
+            if (viewer != null && viewer.getWorld() == cage.world) {
+                viewer.sendMultiBlockChange(real);
+            }
+        }
+    }
+    
+    /**
+     * Stop tracking a player as a viewer of client-side cages, e.g., when they quit or change
+     * world; their client drops the fake blocks along with the world anyway
+     */
+    public void forgetViewer(Player player) {
+        if (clientCageCount == 0) return;
+        
+        for (IceCage cage : activeCages.values()) {
+            if (cage.fakeBlocks != null) {
+                cage.viewers.remove(player.getUniqueId());
+            }
+        }
+    }
+    
+    /**
+     * Keep players from moving through the shell of a client-side cage, since the server
+     * does not see the fake blocks. Called for every player's movement.
+     */
+    public void enforceClientCages(PlayerMoveEvent event) {
+        if (clientCageCount == 0) return;
+        
+        Location from = event.getFrom();
+        Location to = event.getTo();
+        if (from.getX() == to.getX() && from.getY() == to.getY() && from.getZ() == to.getZ()) return;
+        
+        if (crossesClientCage(from, to)) {
+            // Stay put but keep looking around
+            Location back = from.clone();
+            back.setYaw(to.getYaw());
+            back.setPitch(to.getPitch());
+            event.setTo(back);
+        }
+    }
+    
+    /**
+     * Keep players from teleporting through the shell of a client-side cage, e.g., with an
+     * ender pearl or chorus fruit. Teleports by commands and plugins are left alone.
+     */
+    public void enforceClientCages(PlayerTeleportEvent event) {
+        if (clientCageCount == 0) return;
+        
+        PlayerTeleportEvent.TeleportCause cause = event.getCause();
+        if (cause == PlayerTeleportEvent.TeleportCause.COMMAND || cause == PlayerTeleportEvent.TeleportCause.PLUGIN) return;
+        
+        if (crossesClientCage(event.getFrom(), event.getTo())) {
+            event.setCancelled(true);
+        }
+    }
+    
+    /**
+     * Check if moving between two locations enters or leaves a client-side cage
+     */
+    private boolean crossesClientCage(Location from, Location to) {
+        for (IceCage cage : activeCages.values()) {
+            if (cage.fakeBlocks == null) continue;
+            if (cage.contains(from) != cage.contains(to)) return true;
+        }
+        return false;
+    }
+    
     /**
      * Check if a block is part of an ice cage
      */
-    public boolean isIceCageBlock(Location location) {
-        return allCageBlocks.contains(getLocationKey(location));
+    public boolean isIceCageBlock(Block block) {
+        return cageIndex.contains(block);
+    }
+    
+    /**
+     * Check if a packed block position is part of an active ice cage
+     */
+    public boolean isIceCageBlock(World world, long key) {
+        return cageIndex.contains(world, key);
     }
     
     @Override
     public void cleanup(Player player) {
         super.cleanup(player);
-        cancelSpeedTask(player);
+        cancelExpiry(speedTimers, player);
         removeCage(player);
     }
     
     private static class IceCage {
-        final List<Location> blocks;
-        final BukkitTask task;
+        final World world;
+        final double centerX;
+        final double centerY;
+        final double centerZ;
+        final int radius;
+        // Packed positions of the blocks placed so far, see BlockKey
+        final LongHashSet blocks = new LongHashSet();
+        BlockEditQueue.Job placement;
+        // Client-side cages only: the fake blocks and who has been sent them
+        Map<Position, BlockData> fakeBlocks;
+        final Set<UUID> viewers = new HashSet<>();
+        BukkitTask task;
+        
+        IceCage(World world, double centerX, double centerY, double centerZ, int radius) {
+            this.world = world;
+            this.centerX = centerX;
+            this.centerY = centerY;
+            this.centerZ = centerZ;
+            this.radius = radius;
+        }
+        
+        boolean contains(Location location) {
+            return location.getWorld() == world && distanceSquared(location) < radius * radius;
+        }
         
-        IceCage(List<Location> blocks, BukkitTask task) {
-            this.blocks = blocks;
-            this.task = task;
+        double distanceSquared(Location location) {
+            double dx = location.getX() - centerX;
+            double dy = location.getY() - centerY;
+            double dz = location.getZ() - centerZ;
+            return dx * dx + dy * dy + dz * dz;
         }
     }
 }
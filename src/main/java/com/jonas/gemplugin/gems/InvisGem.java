@@ -2,6 +2,7 @@ package com.jonas.gemplugin.gems;
 
 import com.jonas.gemplugin.GemPlugin;
 import com.jonas.gemplugin.utils.MessageUtils;
+import com.jonas.gemplugin.utils.TimingWheel;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 import net.kyori.adventure.text.format.TextDecoration;
@@ -12,9 +13,8 @@ import org.bukkit.potion.PotionEffect;
 import org.bukkit.potion.PotionEffectType;
 
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -24,10 +24,16 @@ import java.util.UUID;
  */
 public class InvisGem extends Gem {
     
-    private final Set<UUID> fullInvisActive = new HashSet<>();
+    public static final int ID = 5;
+    public static final Material MATERIAL = Material.PHANTOM_MEMBRANE;
+    
+    private final int primaryAbility;
+    // Pending end of Full Invisibility per player
+    private final Map<UUID, TimingWheel.Timer> fullInvisModes = timerMap();
     
     public InvisGem(GemPlugin plugin) {
         super(plugin);
+        this.primaryAbility = plugin.getCooldownManager().getAbilityId("invis_primary");
     }
     
     @Override
@@ -35,6 +41,11 @@ public class InvisGem extends Gem {
         return "invis";
     }
     
+    @Override
+    public int getId() {
+        return ID;
+    }
+    
     @Override
     public Component getDisplayName() {
         return Component.text("Invis Gem")
@@ -61,7 +72,7 @@ public class InvisGem extends Gem {
     
     @Override
     public Material getMaterial() {
-        return Material.PHANTOM_MEMBRANE;
+        return MATERIAL;
     }
     
     @Override
@@ -76,7 +87,7 @@ public class InvisGem extends Gem {
     public void removePassiveEffects(Player player) {
         removeGemEffect(player, PotionEffectType.INVISIBILITY);
         removeGemEffect(player, PotionEffectType.SPEED);
-        fullInvisActive.remove(player.getUniqueId());
+        cancelExpiry(fullInvisModes, player);
         
         // Make sure player is visible again
         for (Player online : Bukkit.getOnlinePlayers()) {
@@ -89,14 +100,12 @@ public class InvisGem extends Gem {
         int duration = plugin.getConfigManager().getDuration("invis", "primary");
         int cooldown = plugin.getConfigManager().getCooldown("invis", "primary");
         
-        if (plugin.getCooldownManager().hasCooldown(player, "invis_primary")) {
-            int remaining = plugin.getCooldownManager().getRemainingCooldown(player, "invis_primary");
+        int remaining = plugin.getCooldownManager().remaining(player, primaryAbility);
+        if (remaining > 0) {
             MessageUtils.sendError(player, "Ability on cooldown! " + remaining + "s remaining");
             return;
         }
         
-        fullInvisActive.add(player.getUniqueId());
-        
         // Hide player from all other players (including armor and items)
         for (Player online : Bukkit.getOnlinePlayers()) {
             if (!online.getUniqueId().equals(player.getUniqueId())) {
@@ -107,32 +116,29 @@ public class InvisGem extends Gem {
         MessageUtils.sendSuccess(player, "Full Invisibility activated!");
         
         // Set cooldown
-        plugin.getCooldownManager().setCooldown(player, "invis_primary", cooldown);
+        plugin.getCooldownManager().setCooldown(player, primaryAbility, cooldown);
         
         // Schedule deactivation
-        Bukkit.getScheduler().runTaskLater(plugin, () -> {
-            fullInvisActive.remove(player.getUniqueId());
-            if (player.isOnline()) {
-                // Make player visible again (but still has invisibility potion effect)
-                for (Player online : Bukkit.getOnlinePlayers()) {
-                    online.showPlayer(plugin, player);
-                }
-                MessageUtils.sendInfo(player, "Full Invisibility ended");
+        scheduleExpiry(fullInvisModes, player, duration * 20L, () -> {
+            // Make player visible again (but still has invisibility potion effect)
+            for (Player online : Bukkit.getOnlinePlayers()) {
+                online.showPlayer(plugin, player);
             }
-        }, duration * 20L);
+            MessageUtils.sendInfo(player, "Full Invisibility ended");
+        });
     }
     
     /**
      * Check if full invisibility is active
      */
     public boolean isFullInvisActive(Player player) {
-        return fullInvisActive.contains(player.getUniqueId());
+        return hasPendingExpiry(fullInvisModes, player);
     }
     
     @Override
     public void cleanup(Player player) {
         super.cleanup(player);
-        fullInvisActive.remove(player.getUniqueId());
+        cancelExpiry(fullInvisModes, player);
         
         // Make sure player is visible again
         for (Player online : Bukkit.getOnlinePlayers()) {
@@ -2,19 +2,18 @@ package com.jonas.gemplugin.gems;
 
 import com.jonas.gemplugin.GemPlugin;
 import com.jonas.gemplugin.utils.MessageUtils;
+import com.jonas.gemplugin.utils.TimingWheel;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 import net.kyori.adventure.text.format.TextDecoration;
-import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
 import org.bukkit.potion.PotionEffect;
 import org.bukkit.potion.PotionEffectType;
 
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -24,10 +23,16 @@ import java.util.UUID;
  */
 public class SpeedGem extends Gem {
     
-    private final Set<UUID> hasteBoostActive = new HashSet<>();
+    public static final int ID = 3;
+    public static final Material MATERIAL = Material.SUGAR;
+    
+    private final int primaryAbility;
+    // Pending end of Haste Boost per player
+    private final Map<UUID, TimingWheel.Timer> hasteBoosts = timerMap();
     
     public SpeedGem(GemPlugin plugin) {
         super(plugin);
+        this.primaryAbility = plugin.getCooldownManager().getAbilityId("speed_primary");
     }
     
     @Override
@@ -35,6 +40,11 @@ public class SpeedGem extends Gem {
         return "speed";
     }
     
+    @Override
+    public int getId() {
+        return ID;
+    }
+    
     @Override
     public Component getDisplayName() {
         return Component.text("Speed Gem")
@@ -60,7 +70,7 @@ public class SpeedGem extends Gem {
     
     @Override
     public Material getMaterial() {
-        return Material.SUGAR;
+        return MATERIAL;
     }
     
     @Override
@@ -75,7 +85,7 @@ public class SpeedGem extends Gem {
     public void removePassiveEffects(Player player) {
         removeGemEffect(player, PotionEffectType.SPEED);
         removeGemEffect(player, PotionEffectType.HASTE);
-        hasteBoostActive.remove(player.getUniqueId());
+        cancelExpiry(hasteBoosts, player);
     }
     
     @Override
@@ -83,14 +93,12 @@ public class SpeedGem extends Gem {
         int duration = plugin.getConfigManager().getDuration("speed", "primary");
         int cooldown = plugin.getConfigManager().getCooldown("speed", "primary");
         
-        if (plugin.getCooldownManager().hasCooldown(player, "speed_primary")) {
-            int remaining = plugin.getCooldownManager().getRemainingCooldown(player, "speed_primary");
+        int remaining = plugin.getCooldownManager().remaining(player, primaryAbility);
+        if (remaining > 0) {
             MessageUtils.sendError(player, "Ability on cooldown! " + remaining + "s remaining");
             return;
         }
         
-        hasteBoostActive.add(player.getUniqueId());
-        
         // Apply Haste V (which overrides the passive Haste III)
         applyGemEffect(player, new PotionEffect(PotionEffectType.HASTE, 
                 duration * 20, 4, false, false, true));
@@ -98,22 +106,19 @@ public class SpeedGem extends Gem {
         MessageUtils.sendSuccess(player, "Haste Boost activated!");
         
         // Set cooldown
-        plugin.getCooldownManager().setCooldown(player, "speed_primary", cooldown);
+        plugin.getCooldownManager().setCooldown(player, primaryAbility, cooldown);
         
         // Schedule deactivation
-        Bukkit.getScheduler().runTaskLater(plugin, () -> {
-            hasteBoostActive.remove(player.getUniqueId());
-            if (player.isOnline()) {
-                // Reapply passive effects
-                applyPassiveEffects(player);
-                MessageUtils.sendInfo(player, "Haste Boost ended");
-            }
-        }, duration * 20L);
+        scheduleExpiry(hasteBoosts, player, duration * 20L, () -> {
+            // Reapply passive effects
+            applyPassiveEffects(player);
+            MessageUtils.sendInfo(player, "Haste Boost ended");
+        });
     }
     
     @Override
     public void cleanup(Player player) {
         super.cleanup(player);
-        hasteBoostActive.remove(player.getUniqueId());
+        cancelExpiry(hasteBoosts, player);
     }
 }
@@ -2,10 +2,10 @@ package com.jonas.gemplugin.gems;
 
 import com.jonas.gemplugin.GemPlugin;
 import com.jonas.gemplugin.utils.MessageUtils;
+import com.jonas.gemplugin.utils.TimingWheel;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 import net.kyori.adventure.text.format.TextDecoration;
-import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
 import org.bukkit.event.entity.EntityDamageByEntityEvent;
@@ -21,11 +21,17 @@ import java.util.*;
  */
 public class StrengthGem extends Gem {
     
-    private final Set<UUID> critModeActive = new HashSet<>();
+    public static final int ID = 1;
+    public static final Material MATERIAL = Material.REDSTONE;
+    
+    private final int primaryAbility;
+    // Pending end of Critical Mode per player
+    private final Map<UUID, TimingWheel.Timer> critModes = timerMap();
     private final Random random = new Random();
     
     public StrengthGem(GemPlugin plugin) {
         super(plugin);
+        this.primaryAbility = plugin.getCooldownManager().getAbilityId("strength_primary");
     }
     
     @Override
@@ -33,6 +39,11 @@ public class StrengthGem extends Gem {
         return "strength";
     }
     
+    @Override
+    public int getId() {
+        return ID;
+    }
+    
     @Override
     public Component getDisplayName() {
         return Component.text("Strength Gem")
@@ -58,7 +69,7 @@ public class StrengthGem extends Gem {
     
     @Override
     public Material getMaterial() {
-        return Material.REDSTONE;
+        return MATERIAL;
     }
     
     @Override
@@ -70,7 +81,7 @@ public class StrengthGem extends Gem {
     @Override
     public void removePassiveEffects(Player player) {
         removeGemEffect(player, PotionEffectType.STRENGTH);
-        critModeActive.remove(player.getUniqueId());
+        cancelExpiry(critModes, player);
     }
     
     @Override
@@ -78,25 +89,19 @@ public class StrengthGem extends Gem {
         int duration = plugin.getConfigManager().getDuration("strength", "primary");
         int cooldown = plugin.getConfigManager().getCooldown("strength", "primary");
         
-        if (plugin.getCooldownManager().hasCooldown(player, "strength_primary")) {
-            int remaining = plugin.getCooldownManager().getRemainingCooldown(player, "strength_primary");
+        int remaining = plugin.getCooldownManager().remaining(player, primaryAbility);
+        if (remaining > 0) {
             MessageUtils.sendError(player, "Ability on cooldown! " + remaining + "s remaining");
             return;
         }
         
-        critModeActive.add(player.getUniqueId());
+        // Schedule deactivation; the mode lasts as long as the timer is pending
+        scheduleExpiry(critModes, player, duration * 20L,
+                () -> MessageUtils.sendInfo(player, "Critical Mode ended"));
         MessageUtils.sendSuccess(player, "Critical Mode activated!");
         
         // Set cooldown
-        plugin.getCooldownManager().setCooldown(player, "strength_primary", cooldown);
-        
-        // Schedule deactivation
-        Bukkit.getScheduler().runTaskLater(plugin, () -> {
-            critModeActive.remove(player.getUniqueId());
-            if (player.isOnline()) {
-                MessageUtils.sendInfo(player, "Critical Mode ended");
-            }
-        }, duration * 20L);
+        plugin.getCooldownManager().setCooldown(player, primaryAbility, cooldown);
     }
     
     @Override
@@ -104,7 +109,7 @@ public class StrengthGem extends Gem {
         double baseDamage = event.getDamage();
         
         // Critical hits when primary is active
-        if (critModeActive.contains(attacker.getUniqueId())) {
+        if (hasPendingExpiry(critModes, attacker)) {
             // Make it a critical hit by multiplying damage by 1.5
             event.setDamage(baseDamage * 1.5);
             // Show critical hit particles
@@ -126,6 +131,6 @@ public class StrengthGem extends Gem {
     @Override
     public void cleanup(Player player) {
         super.cleanup(player);
-        critModeActive.remove(player.getUniqueId());
+        cancelExpiry(critModes, player);
     }
 }
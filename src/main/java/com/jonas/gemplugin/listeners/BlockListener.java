@@ -14,6 +14,7 @@ import org.bukkit.event.block.BlockPistonExtendEvent;
 import org.bukkit.event.block.BlockPistonRetractEvent;
 import org.bukkit.event.block.BlockPlaceEvent;
 import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
 
 /**
  * Handles block-related events for gems
@@ -31,10 +32,10 @@ public class BlockListener implements Listener {
         if (event.isCancelled()) return;
         
         // Check if the block is part of an ice cage
-        Gem gem = plugin.getGemManager().getGem("ice");
+        Gem gem = plugin.getGemManager().getLoadedGem(IceGem.ID);
         if (gem instanceof IceGem) {
             IceGem iceGem = (IceGem) gem;
-            if (iceGem.isIceCageBlock(event.getBlock().getLocation())) {
+            if (iceGem.isIceCageBlock(event.getBlock())) {
                 event.setCancelled(true);
                 MessageUtils.sendError(event.getPlayer(), "You cannot break ice cage blocks!");
             }
@@ -46,10 +47,10 @@ public class BlockListener implements Listener {
         if (event.isCancelled()) return;
         
         // Check if the block is part of an ice cage
-        Gem gem = plugin.getGemManager().getGem("ice");
+        Gem gem = plugin.getGemManager().getLoadedGem(IceGem.ID);
         if (gem instanceof IceGem) {
             IceGem iceGem = (IceGem) gem;
-            if (iceGem.isIceCageBlock(event.getBlock().getLocation())) {
+            if (iceGem.isIceCageBlock(event.getBlock())) {
                 event.setCancelled(true);
                 MessageUtils.sendError(event.getPlayer(), "You cannot damage ice cage blocks!");
             }
@@ -61,10 +62,10 @@ public class BlockListener implements Listener {
         if (event.isCancelled()) return;
         
         // Check if any blocks in the explosion are ice cage blocks
-        Gem gem = plugin.getGemManager().getGem("ice");
+        Gem gem = plugin.getGemManager().getLoadedGem(IceGem.ID);
         if (gem instanceof IceGem) {
             IceGem iceGem = (IceGem) gem;
-            event.blockList().removeIf(block -> iceGem.isIceCageBlock(block.getLocation()));
+            event.blockList().removeIf(iceGem::isIceCageBlock);
         }
     }
     
@@ -73,11 +74,11 @@ public class BlockListener implements Listener {
         if (event.isCancelled()) return;
         
         // Check if any blocks being pushed are ice cage blocks
-        Gem gem = plugin.getGemManager().getGem("ice");
+        Gem gem = plugin.getGemManager().getLoadedGem(IceGem.ID);
         if (gem instanceof IceGem) {
             IceGem iceGem = (IceGem) gem;
             for (Block block : event.getBlocks()) {
-                if (iceGem.isIceCageBlock(block.getLocation())) {
+                if (iceGem.isIceCageBlock(block)) {
                     event.setCancelled(true);
                     return;
                 }
@@ -90,11 +91,11 @@ public class BlockListener implements Listener {
         if (event.isCancelled()) return;
         
         // Check if any blocks being pulled are ice cage blocks
-        Gem gem = plugin.getGemManager().getGem("ice");
+        Gem gem = plugin.getGemManager().getLoadedGem(IceGem.ID);
         if (gem instanceof IceGem) {
             IceGem iceGem = (IceGem) gem;
             for (Block block : event.getBlocks()) {
-                if (iceGem.isIceCageBlock(block.getLocation())) {
+                if (iceGem.isIceCageBlock(block)) {
                     event.setCancelled(true);
                     return;
                 }
@@ -102,6 +103,13 @@ public class BlockListener implements Listener {
         }
     }
     
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        // Remove ice cage blocks left behind by a crash
+        if (event.isNewChunk()) return;
+        plugin.getCageMarkers().recoverChunk(event.getChunk());
+    }
+    
     @EventHandler(priority = EventPriority.HIGH)
     public void onBlockPlace(BlockPlaceEvent event) {
         if (event.isCancelled()) return;
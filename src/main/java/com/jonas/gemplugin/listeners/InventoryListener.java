@@ -1,30 +1,74 @@
 package com.jonas.gemplugin.listeners;
 
 import com.jonas.gemplugin.GemPlugin;
-import com.jonas.gemplugin.gems.Gem;
+import com.jonas.gemplugin.managers.GemManager;
+import com.jonas.gemplugin.managers.GemSlotIndex;
+import com.jonas.gemplugin.utils.GemItemClassifier;
 import com.jonas.gemplugin.utils.MessageUtils;
-import org.bukkit.Bukkit;
+import com.destroystokyo.paper.event.server.ServerTickEndEvent;
+import io.papermc.paper.event.player.PlayerInventorySlotChangeEvent;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntityPickupItemEvent;
 import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.event.player.PlayerDropItemEvent;
 import org.bukkit.event.player.PlayerItemHeldEvent;
+import org.bukkit.event.player.PlayerSwapHandItemsEvent;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.PlayerInventory;
 
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 /**
  * Handles inventory events to enforce one gem per player and apply passive effects
  */
 public class InventoryListener implements Listener {
     
+    private static final int OFFHAND_SLOT = 40;
+    
     private final GemPlugin plugin;
+    // Players whose inventory changed this tick; each is reconciled once at the end of the tick
+    private final Set<Player> dirtyPlayers = new LinkedHashSet<>();
     
     public InventoryListener(GemPlugin plugin) {
         this.plugin = plugin;
     }
     
+    /**
+     * Queue a player for the end-of-tick reconcile pass.
+     * Any number of events in the same tick result in a single pass.
+     */
+    private void markDirty(Player player) {
+        dirtyPlayers.add(player);
+    }
+    
+    @EventHandler
+    public void onServerTickEnd(ServerTickEndEvent event) {
+        if (dirtyPlayers.isEmpty()) return;
+        
+        // Copy first: enforcement edits inventories, which can fire further events
+        Player[] players = dirtyPlayers.toArray(new Player[0]);
+        dirtyPlayers.clear();
+        
+        for (Player player : players) {
+            if (!player.isOnline()) continue;
+            reconcile(player);
+        }
+    }
+    
+    /**
+     * Enforce the one-gem rule, refresh the offhand cache and update passives for a player
+     */
+    private void reconcile(Player player) {
+        checkAndEnforceOneGem(player);
+        plugin.getGemManager().refreshActiveGem(player);
+        plugin.getGemManager().syncPassiveEffects(player);
+    }
+    
     @EventHandler(priority = EventPriority.MONITOR)
     public void onEntityPickupItem(EntityPickupItemEvent event) {
         if (event.isCancelled()) return;
@@ -37,12 +81,7 @@ public class InventoryListener implements Listener {
         if (plugin.getGemManager().isGem(item)) {
             plugin.getGemManager().recordGemInInventory(player, item);
         }
-        
-        // Delay check to next tick to ensure inventory is updated
-        Bukkit.getScheduler().runTask(plugin, () -> {
-            checkAndEnforceOneGem(player);
-            updatePassiveEffects(player);
-        });
+        markDirty(player);
     }
     
     @EventHandler(priority = EventPriority.MONITOR)
@@ -51,97 +90,110 @@ public class InventoryListener implements Listener {
         if (!(event.getWhoClicked() instanceof Player)) return;
         
         Player player = (Player) event.getWhoClicked();
-        
-        // Delay check to next tick to ensure inventory is updated
-        Bukkit.getScheduler().runTask(plugin, () -> {
-            // Scan inventory for any gems and record their timestamps
-            recordAllGemsInInventory(player);
-            checkAndEnforceOneGem(player);
-            updatePassiveEffects(player);
-        });
+        markDirty(player);
     }
     
-    @EventHandler
-    public void onPlayerItemHeld(PlayerItemHeldEvent event) {
-        Player player = event.getPlayer();
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onInventoryDrag(InventoryDragEvent event) {
+        if (event.isCancelled()) return;
+        if (!(event.getWhoClicked() instanceof Player)) return;
         
-        // Delay check to next tick
-        Bukkit.getScheduler().runTask(plugin, () -> {
-            updatePassiveEffects(player);
-        });
+        Player player = (Player) event.getWhoClicked();
+        markDirty(player);
     }
     
-    /**
-     * Record all gems currently in a player's inventory
-     */
-    private void recordAllGemsInInventory(Player player) {
-        PlayerInventory inv = player.getInventory();
-        for (int i = 0; i < inv.getSize(); i++) {
-            ItemStack item = inv.getItem(i);
-            if (item != null && plugin.getGemManager().isGem(item)) {
-                String gemType = plugin.getGemManager().getGemType(item);
-                // Only record if this gem type isn't already tracked for this player
-                if (plugin.getGemManager().getPlayerGemTimestamp(player, gemType) == Long.MAX_VALUE) {
-                    plugin.getGemManager().recordGemInInventory(player, item);
-                }
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onInventorySlotChange(PlayerInventorySlotChangeEvent event) {
+        Player player = event.getPlayer();
+        int slot = event.getSlot();
+        GemManager gemManager = plugin.getGemManager();
+        GemItemClassifier.GemInfo info = gemManager.classifyItem(event.getNewItemStack());
+        int gemId = info != null ? info.id() : GemItemClassifier.NO_GEM;
+        
+        // Only slots whose gem actually changed matter
+        if (!gemManager.getSlotIndex().update(player, slot, gemId)) return;
+        
+        if (info != null) {
+            // Items moved in from containers may still carry the old string tag
+            if (info.legacy()) {
+                gemManager.migrateLegacyGem(player.getInventory().getItem(slot));
             }
+            gemManager.recordGemIfUntracked(player, gemId);
+        }
+        
+        // Enforcement waits for the reconcile pass so the rest of this inventory sync lands first
+        if (slot == OFFHAND_SLOT || gemManager.getSlotIndex().getGemCount(player) > 1) {
+            markDirty(player);
         }
     }
     
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onSwapHandItems(PlayerSwapHandItemsEvent event) {
+        if (event.isCancelled()) return;
+        
+        Player player = event.getPlayer();
+        markDirty(player);
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerDropItem(PlayerDropItemEvent event) {
+        if (event.isCancelled()) return;
+        
+        Player player = event.getPlayer();
+        markDirty(player);
+    }
+    
+    @EventHandler
+    public void onPlayerItemHeld(PlayerItemHeldEvent event) {
+        Player player = event.getPlayer();
+        markDirty(player);
+    }
+    
     /**
-     * Check if player has more than one gem and remove extras
+     * Check if player has more than one gem and remove extras.
+     * Only the slots recorded in the gem slot index are inspected.
      */
     private void checkAndEnforceOneGem(Player player) {
+        GemManager gemManager = plugin.getGemManager();
+        GemSlotIndex slotIndex = gemManager.getSlotIndex();
+        long gemSlots = slotIndex.getGemSlots(player);
+        if (Long.bitCount(gemSlots) < 2) return;
+        
         PlayerInventory inv = player.getInventory();
-        ItemStack oldestGem = null;
         int oldestGemSlot = -1;
-        String oldestGemType = null;
         long oldestTimestamp = Long.MAX_VALUE;
         
         // First pass: find the gem that has been in THIS player's inventory the longest
-        for (int i = 0; i < inv.getSize(); i++) {
-            ItemStack item = inv.getItem(i);
-            if (item != null && plugin.getGemManager().isGem(item)) {
-                String gemType = plugin.getGemManager().getGemType(item);
-                long timestamp = plugin.getGemManager().getPlayerGemTimestamp(player, gemType);
-                if (timestamp < oldestTimestamp) {
-                    oldestGem = item;
-                    oldestGemSlot = i;
-                    oldestGemType = gemType;
-                    oldestTimestamp = timestamp;
-                }
+        for (long bits = gemSlots; bits != 0; bits &= bits - 1) {
+            int slot = Long.numberOfTrailingZeros(bits);
+            String gemType = gemManager.getGemType(inv.getItem(slot));
+            if (gemType == null) {
+                // Stale entry, the slot was emptied without a change notification yet
+                slotIndex.update(player, slot, GemItemClassifier.NO_GEM);
+                continue;
+            }
+            
+            long timestamp = gemManager.getPlayerGemTimestamp(player, gemType);
+            if (timestamp < oldestTimestamp) {
+                oldestGemSlot = slot;
+                oldestTimestamp = timestamp;
             }
         }
         
         // Second pass: remove all gems except the one that's been in inventory longest
-        if (oldestGem != null) {
-            for (int i = 0; i < inv.getSize(); i++) {
-                ItemStack item = inv.getItem(i);
-                if (item != null && plugin.getGemManager().isGem(item) && i != oldestGemSlot) {
-                    String gemType = plugin.getGemManager().getGemType(item);
-                    plugin.getGemManager().removePlayerGemTimestamp(player, gemType);
-                    inv.setItem(i, null);
+        if (oldestGemSlot != -1) {
+            for (long bits = slotIndex.getGemSlots(player); bits != 0; bits &= bits - 1) {
+                int slot = Long.numberOfTrailingZeros(bits);
+                if (slot == oldestGemSlot) continue;
+                
+                String gemType = gemManager.getGemType(inv.getItem(slot));
+                if (gemType != null) {
+                    gemManager.removePlayerGemTimestamp(player, gemType);
+                    inv.setItem(slot, null);
                     MessageUtils.sendError(player, "You can only have one gem at a time! The newest gem was removed.");
                 }
+                slotIndex.update(player, slot, GemItemClassifier.NO_GEM);
             }
         }
     }
-    
-    /**
-     * Update passive effects based on offhand gem
-     */
-    private void updatePassiveEffects(Player player) {
-        ItemStack offhand = player.getInventory().getItemInOffHand();
-        Gem currentGem = plugin.getGemManager().getActiveGem(player);
-        
-        // Get all gems and remove their effects first
-        for (Gem gem : plugin.getGemManager().getAllGems().values()) {
-            gem.removePassiveEffects(player);
-        }
-        
-        // Apply effects if gem is in offhand and enabled
-        if (currentGem != null && plugin.getConfigManager().isGemEnabled(currentGem.getName())) {
-            currentGem.applyPassiveEffects(player);
-        }
-    }
 }
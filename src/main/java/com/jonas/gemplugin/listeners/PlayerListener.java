@@ -2,13 +2,22 @@ package com.jonas.gemplugin.listeners;
 
 import com.jonas.gemplugin.GemPlugin;
 import com.jonas.gemplugin.gems.Gem;
+import com.jonas.gemplugin.gems.IceGem;
+import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityPotionEffectEvent;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerMoveEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
 
 /**
  * Handles player events for passive gem abilities
@@ -24,6 +33,12 @@ public class PlayerListener implements Listener {
     @EventHandler
     public void onPlayerMove(PlayerMoveEvent event) {
         Player player = event.getPlayer();
+        
+        // Client-side ice cages hold players in (or out) on the server's side
+        Gem iceGem = plugin.getGemManager().getLoadedGem(IceGem.ID);
+        if (iceGem instanceof IceGem) {
+            ((IceGem) iceGem).enforceClientCages(event);
+        }
         Gem gem = plugin.getGemManager().getActiveGem(player);
         
         if (gem != null && plugin.getConfigManager().isGemEnabled(gem.getName())) {
@@ -31,6 +46,23 @@ public class PlayerListener implements Listener {
         }
     }
     
+    @EventHandler(ignoreCancelled = true)
+    public void onPlayerTeleport(PlayerTeleportEvent event) {
+        // Ender pearls and chorus fruit must not carry players through client-side ice cages either
+        Gem iceGem = plugin.getGemManager().getLoadedGem(IceGem.ID);
+        if (iceGem instanceof IceGem) {
+            ((IceGem) iceGem).enforceClientCages(event);
+        }
+    }
+    
+    @EventHandler
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {
+        Gem iceGem = plugin.getGemManager().getLoadedGem(IceGem.ID);
+        if (iceGem instanceof IceGem) {
+            ((IceGem) iceGem).forgetViewer(event.getPlayer());
+        }
+    }
+    
     @EventHandler(priority = EventPriority.HIGH)
     public void onPlayerAttack(EntityDamageByEntityEvent event) {
         if (event.getDamager() instanceof Player) {
@@ -71,6 +103,69 @@ public class PlayerListener implements Listener {
         }
     }
     
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) return;
+        
+        // Already off the main thread: load the trust set here so it is ready by the join
+        plugin.getTrustManager().prefetch(event.getUniqueId());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        
+        // Index gem slots once; slot change events keep the index current afterwards
+        plugin.getGemManager().indexInventory(player);
+        plugin.getGemManager().refreshActiveGem(player);
+        plugin.getGemManager().syncPassiveEffects(player);
+        
+        // Pick up cooldowns persisted from an earlier session
+        plugin.getCooldownManager().restoreCooldowns(player);
+        
+        // Make the player's trust set resident (usually prefetched during login)
+        plugin.getTrustManager().loadPlayer(player);
+        
+        // Remember the name so /trust and /untrust can resolve the player once offline
+        plugin.getPlayerNameIndex().update(player);
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerDeath(PlayerDeathEvent event) {
+        Player player = event.getEntity();
+        
+        // Drops are cleared from the inventory after this event, so re-read on the next tick
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            if (player.isOnline()) {
+                plugin.getGemManager().refreshActiveGem(player);
+            }
+        });
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerRespawn(PlayerRespawnEvent event) {
+        Player player = event.getPlayer();
+        plugin.getGemManager().refreshActiveGem(player);
+        
+        // Death cleared every potion effect, so passives have to be reapplied
+        plugin.getGemManager().invalidatePassiveEffects(player);
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPotionEffectCleared(EntityPotionEffectEvent event) {
+        if (event.isCancelled()) return;
+        if (!(event.getEntity() instanceof Player)) return;
+        if (event.getAction() != EntityPotionEffectEvent.Action.CLEARED) return;
+        
+        EntityPotionEffectEvent.Cause cause = event.getCause();
+        if (cause == EntityPotionEffectEvent.Cause.MILK
+                || cause == EntityPotionEffectEvent.Cause.TOTEM
+                || cause == EntityPotionEffectEvent.Cause.COMMAND
+                || cause == EntityPotionEffectEvent.Cause.PLUGIN) {
+            plugin.getGemManager().invalidatePassiveEffects((Player) event.getEntity());
+        }
+    }
+    
     @EventHandler
     public void onPlayerQuit(PlayerQuitEvent event) {
         Player player = event.getPlayer();
@@ -81,10 +176,35 @@ public class PlayerListener implements Listener {
             gem.cleanup(player);
         }
         
-        // Clear cooldowns
-        plugin.getCooldownManager().clearAllCooldowns(player);
+        // The applied passives can belong to a different gem if the offhand changed this tick
+        Gem appliedGem = plugin.getGemManager().clearPassiveState(player);
+        if (appliedGem != null && appliedGem != gem) {
+            appliedGem.cleanup(player);
+        }
+        
+        // Stop sending client-side ice cages to this player
+        Gem iceGem = plugin.getGemManager().getLoadedGem(IceGem.ID);
+        if (iceGem instanceof IceGem) {
+            ((IceGem) iceGem).forgetViewer(player);
+        }
+        
+        // Drop any pending gem expirations belonging to this session
+        plugin.getTimingWheel().cancelAll(player.getUniqueId());
+        for (Gem loaded : plugin.getGemManager().getAllGems()) {
+            loaded.forgetTimers(player.getUniqueId());
+        }
+        
+        // Park cooldowns until the player rejoins; they are already in the journal
+        plugin.getCooldownManager().unloadCooldowns(player);
+        
+        // Only online players' trust sets stay in memory
+        plugin.getTrustManager().unloadPlayer(player);
         
         // Clear gem timestamps
         plugin.getGemManager().clearPlayerGemTimestamps(player);
+        
+        // Drop the cached active gem and slot index
+        plugin.getGemManager().clearActiveGem(player);
+        plugin.getGemManager().getSlotIndex().clear(player);
     }
 }
@@ -0,0 +1,404 @@
+package com.jonas.gemplugin.managers;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Binary trust storage: a snapshot of sorted (truster, trusted) UUID pairs in trusts.bin,
+ * plus an append-only log of changes since the snapshot in trusts.log.
+ * The snapshot stays memory-mapped and is binary-searched per player, so only the changes
+ * since the last compaction are held on the heap. Changes cost one small buffered append;
+ * compaction merges them into a new snapshot. All writes happen on a dedicated background thread.
+ */
+public class BinaryTrustStore implements TrustStorage {
+    
+    private static final int SNAPSHOT_MAGIC = 0x47545331; // "GTS1"
+    private static final int LOG_MAGIC = 0x47544C31; // "GTL1"
+    private static final int HEADER_BYTES = 8;
+    private static final int PAIR_BYTES = 32;
+    private static final byte OP_REMOVE = 0;
+    private static final byte OP_ADD = 1;
+    // Logged changes before the snapshot is worth rewriting
+    private static final int COMPACT_THRESHOLD = 4096;
+    
+    private final File snapshotFile;
+    private final File logFile;
+    private final Logger logger;
+    private final ExecutorService writer;
+    // Only touched on the writer thread
+    private DataOutputStream log;
+    // Guarded by this. Pairs of the mapped snapshot, without the header.
+    private ByteBuffer snapshot = ByteBuffer.allocate(0);
+    // Guarded by this. Changes since the snapshot: truster -> trusted -> added (true) or removed (false)
+    private Map<UUID, Map<UUID, Boolean>> changes = new HashMap<>();
+    // Guarded by this. Changes being merged into a new snapshot, or null
+    private Map<UUID, Map<UUID, Boolean>> compacting;
+    private int opsSinceCompaction;
+    private boolean compactQueued;
+    
+    public BinaryTrustStore(File dataFolder, Logger logger) {
+        this.snapshotFile = new File(dataFolder, "trusts.bin");
+        this.logFile = new File(dataFolder, "trusts.log");
+        this.logger = logger;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "GemPlugin-TrustWriter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        open();
+    }
+    
+    @Override
+    public boolean exists() {
+        return snapshotFile.exists() || logFile.exists();
+    }
+    
+    /**
+     * Map the snapshot and replay the change log into memory
+     */
+    private synchronized void open() {
+        if (snapshotFile.exists()) {
+            try {
+                snapshot = mapSnapshot();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not read " + snapshotFile.getName(), e);
+            }
+        }
+        if (logFile.exists()) {
+            opsSinceCompaction = replayLog();
+        }
+    }
+    
+    private ByteBuffer mapSnapshot() throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != SNAPSHOT_MAGIC) {
+                logger.warning("Ignoring " + snapshotFile.getName() + ": unrecognised format");
+                return ByteBuffer.allocate(0);
+            }
+            
+            int count = Math.min(buffer.getInt(), buffer.remaining() / PAIR_BYTES);
+            buffer.limit(HEADER_BYTES + count * PAIR_BYTES);
+            return buffer.slice();
+        }
+    }
+    
+    private int replayLog() {
+        int ops = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+            if (in.readInt() != LOG_MAGIC) {
+                logger.warning("Ignoring " + logFile.getName() + ": unrecognised format");
+                return 0;
+            }
+            
+            while (true) {
+                boolean add = in.readByte() == OP_ADD;
+                UUID truster = new UUID(in.readLong(), in.readLong());
+                UUID trusted = new UUID(in.readLong(), in.readLong());
+                changes.computeIfAbsent(truster, k -> new HashMap<>()).put(trusted, add);
+                ops++;
+            }
+        } catch (EOFException e) {
+            // End of log (or a partially written last record)
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not read " + logFile.getName(), e);
+        }
+        return ops;
+    }
+    
+    @Override
+    public synchronized Set<UUID> load(UUID truster) {
+        Set<UUID> trusted = new HashSet<>();
+        int count = snapshot.capacity() / PAIR_BYTES;
+        long msb = truster.getMostSignificantBits();
+        long lsb = truster.getLeastSignificantBits();
+        
+        // Pairs are sorted by truster: find the first one for this player, then read the run
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(snapshot.getLong(mid * PAIR_BYTES), snapshot.getLong(mid * PAIR_BYTES + 8), msb, lsb) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < count; i++) {
+            int offset = i * PAIR_BYTES;
+            if (snapshot.getLong(offset) != msb || snapshot.getLong(offset + 8) != lsb) break;
+            trusted.add(new UUID(snapshot.getLong(offset + 16), snapshot.getLong(offset + 24)));
+        }
+        
+        applyChanges(compacting, truster, trusted);
+        applyChanges(changes, truster, trusted);
+        return trusted;
+    }
+    
+    @Override
+    public synchronized Map<UUID, Set<UUID>> loadAll() {
+        Map<UUID, Set<UUID>> trusts = new HashMap<>();
+        for (int offset = 0; offset < snapshot.capacity(); offset += PAIR_BYTES) {
+            UUID truster = new UUID(snapshot.getLong(offset), snapshot.getLong(offset + 8));
+            trusts.computeIfAbsent(truster, k -> new HashSet<>())
+                    .add(new UUID(snapshot.getLong(offset + 16), snapshot.getLong(offset + 24)));
+        }
+        
+        for (Map<UUID, Map<UUID, Boolean>> pending : Arrays.asList(compacting, changes)) {
+            if (pending == null) continue;
+            for (UUID truster : pending.keySet()) {
+                applyChanges(pending, truster, trusts.computeIfAbsent(truster, k -> new HashSet<>()));
+            }
+        }
+        trusts.values().removeIf(Set::isEmpty);
+        return trusts;
+    }
+    
+    private static void applyChanges(Map<UUID, Map<UUID, Boolean>> pending, UUID truster, Set<UUID> trusted) {
+        if (pending == null) return;
+        Map<UUID, Boolean> playerChanges = pending.get(truster);
+        if (playerChanges == null) return;
+        
+        for (Map.Entry<UUID, Boolean> change : playerChanges.entrySet()) {
+            if (change.getValue()) {
+                trusted.add(change.getKey());
+            } else {
+                trusted.remove(change.getKey());
+            }
+        }
+    }
+    
+    @Override
+    public void add(UUID truster, UUID trusted) {
+        record(true, truster, trusted);
+    }
+    
+    @Override
+    public void remove(UUID truster, UUID trusted) {
+        record(false, truster, trusted);
+    }
+    
+    private void record(boolean add, UUID truster, UUID trusted) {
+        synchronized (this) {
+            changes.computeIfAbsent(truster, k -> new HashMap<>()).put(trusted, add);
+            if (++opsSinceCompaction >= COMPACT_THRESHOLD) {
+                queueCompaction();
+            }
+        }
+        
+        submit(() -> {
+            DataOutputStream stream = openLog();
+            stream.writeByte(add ? OP_ADD : OP_REMOVE);
+            stream.writeLong(truster.getMostSignificantBits());
+            stream.writeLong(truster.getLeastSignificantBits());
+            stream.writeLong(trusted.getMostSignificantBits());
+            stream.writeLong(trusted.getLeastSignificantBits());
+            stream.flush();
+        });
+    }
+    
+    /**
+     * Queue a merge of the pending changes into a new snapshot. Every change in the log was
+     * recorded in memory before its append was queued, so once the merge is written the log
+     * can go; appends queued behind the merge start a new log.
+     */
+    private synchronized void queueCompaction() {
+        if (compactQueued) return;
+        compactQueued = true;
+        submit(this::compact);
+    }
+    
+    private void compact() throws IOException {
+        ByteBuffer base;
+        Map<UUID, Map<UUID, Boolean>> frozen;
+        synchronized (this) {
+            base = snapshot;
+            frozen = changes;
+            compacting = frozen;
+            changes = new HashMap<>();
+            opsSinceCompaction = 0;
+            compactQueued = false;
+        }
+        
+        boolean written = false;
+        try {
+            writeSnapshot(base, frozen);
+            ByteBuffer mapped = mapSnapshot();
+            synchronized (this) {
+                snapshot = mapped;
+                compacting = null;
+            }
+            written = true;
+            
+            closeLog();
+            Files.deleteIfExists(logFile.toPath());
+        } finally {
+            if (!written) {
+                // Keep the frozen changes; anything recorded since takes precedence
+                synchronized (this) {
+                    for (Map.Entry<UUID, Map<UUID, Boolean>> entry : changes.entrySet()) {
+                        frozen.computeIfAbsent(entry.getKey(), k -> new HashMap<>()).putAll(entry.getValue());
+                    }
+                    changes = frozen;
+                    compacting = null;
+                }
+            }
+        }
+    }
+    
+    @Override
+    public boolean importAll(Map<UUID, ? extends Collection<UUID>> trusts) {
+        Map<UUID, Map<UUID, Boolean>> additions = new HashMap<>();
+        trusts.forEach((truster, trusted) -> {
+            Map<UUID, Boolean> playerChanges = new HashMap<>();
+            for (UUID uuid : trusted) {
+                playerChanges.put(uuid, true);
+            }
+            additions.put(truster, playerChanges);
+        });
+        
+        try {
+            writeSnapshot(ByteBuffer.allocate(0), additions);
+            ByteBuffer mapped = mapSnapshot();
+            synchronized (this) {
+                snapshot = mapped;
+                changes = new HashMap<>();
+                opsSinceCompaction = 0;
+            }
+            Files.deleteIfExists(logFile.toPath());
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not write " + snapshotFile.getName(), e);
+            return false;
+        }
+    }
+    
+    /**
+     * Fold outstanding changes into the snapshot, finish all queued writes and close the store
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (opsSinceCompaction > 0) {
+                queueCompaction();
+            }
+        }
+        submit(this::closeLog);
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warning("Timed out flushing trust data");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Write a new snapshot that merges sorted base pairs with changes, streaming through both
+     * in truster order, then atomically move it into place
+     */
+    private void writeSnapshot(ByteBuffer base, Map<UUID, Map<UUID, Boolean>> pending) throws IOException {
+        TreeMap<UUID, Map<UUID, Boolean>> sortedChanges = new TreeMap<>(pending);
+        int baseCount = base.capacity() / PAIR_BYTES;
+        int count = 0;
+        
+        snapshotFile.getParentFile().mkdirs();
+        File tempFile = new File(snapshotFile.getParentFile(), snapshotFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(0); // Pair count, patched below
+            
+            int index = 0;
+            while (index < baseCount || !sortedChanges.isEmpty()) {
+                UUID baseTruster = index < baseCount
+                        ? new UUID(base.getLong(index * PAIR_BYTES), base.getLong(index * PAIR_BYTES + 8))
+                        : null;
+                UUID changedTruster = sortedChanges.isEmpty() ? null : sortedChanges.firstKey();
+                UUID truster = baseTruster == null
+                        || (changedTruster != null && changedTruster.compareTo(baseTruster) < 0)
+                        ? changedTruster : baseTruster;
+                
+                // Collect this truster's run from the base, then apply its changes
+                Set<UUID> trusted = new TreeSet<>();
+                while (index < baseCount
+                        && base.getLong(index * PAIR_BYTES) == truster.getMostSignificantBits()
+                        && base.getLong(index * PAIR_BYTES + 8) == truster.getLeastSignificantBits()) {
+                    int offset = index * PAIR_BYTES;
+                    trusted.add(new UUID(base.getLong(offset + 16), base.getLong(offset + 24)));
+                    index++;
+                }
+                applyChanges(sortedChanges, truster, trusted);
+                sortedChanges.remove(truster);
+                
+                for (UUID uuid : trusted) {
+                    out.writeLong(truster.getMostSignificantBits());
+                    out.writeLong(truster.getLeastSignificantBits());
+                    out.writeLong(uuid.getMostSignificantBits());
+                    out.writeLong(uuid.getLeastSignificantBits());
+                    count++;
+                }
+            }
+        }
+        
+        try (RandomAccessFile file = new RandomAccessFile(tempFile, "rw")) {
+            file.seek(4);
+            file.writeInt(count);
+        }
+        // Note: on Windows a file that is still mapped cannot be replaced; the changes are then
+        // kept in memory and in the log, and compaction is retried later
+        Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * Compare two UUIDs given as bits, in the same order as {@link UUID#compareTo}
+     */
+    private static int compare(long msb1, long lsb1, long msb2, long lsb2) {
+        int result = Long.compare(msb1, msb2);
+        return result != 0 ? result : Long.compare(lsb1, lsb2);
+    }
+    
+    private DataOutputStream openLog() throws IOException {
+        if (log == null) {
+            logFile.getParentFile().mkdirs();
+            boolean fresh = !logFile.exists() || logFile.length() == 0;
+            log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true)));
+            if (fresh) {
+                log.writeInt(LOG_MAGIC);
+            }
+        }
+        return log;
+    }
+    
+    private void closeLog() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+    
+    private void submit(IOTask task) {
+        writer.execute(() -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not write trust data", e);
+            }
+        });
+    }
+    
+    @FunctionalInterface
+    private interface IOTask {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,133 @@
+package com.jonas.gemplugin.managers;
+
+import com.jonas.gemplugin.GemPlugin;
+import com.jonas.gemplugin.gems.Gem;
+import com.jonas.gemplugin.gems.IceGem;
+import com.jonas.gemplugin.utils.BlockKey;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+
+import java.util.*;
+
+/**
+ * Records placed ice cage blocks in the persistent data of their chunk, as (packed position,
+ * expiry in epoch millis) pairs, so cages left behind by a crash can be cleaned up.
+ * Leftovers are removed lazily when their chunk loads (and for chunks already loaded at enable),
+ * so recovery only costs anything for chunks that are actually used.
+ * Markers are written as each block is placed or removed, while its chunk is certain to be
+ * loaded; a chunk that unloads right after an edit is saved with its marker.
+ */
+public class CageMarkers {
+    
+    private final GemPlugin plugin;
+    private final NamespacedKey key;
+    
+    public CageMarkers(GemPlugin plugin) {
+        this.plugin = plugin;
+        this.key = new NamespacedKey(plugin, "ice_cage_blocks");
+    }
+    
+    /**
+     * Record a placed cage block. Call while its chunk is loaded, e.g., from the edit listener.
+     */
+    public void mark(World world, long block, long expiryMillis) {
+        update(world, block, expiryMillis);
+    }
+    
+    /**
+     * Forget a cage block once it has been removed. Call while its chunk is loaded.
+     */
+    public void unmark(World world, long block) {
+        update(world, block, 0L);
+    }
+    
+    private void update(World world, long block, long expiry) {
+        int chunkX = BlockKey.x(block) >> 4;
+        int chunkZ = BlockKey.z(block) >> 4;
+        // Never load a chunk just for a marker
+        if (!world.isChunkLoaded(chunkX, chunkZ)) return;
+        
+        PersistentDataContainer container = world.getChunkAt(chunkX, chunkZ).getPersistentDataContainer();
+        Map<Long, Long> markers = read(container);
+        if (expiry == 0L) {
+            if (markers.remove(block) == null) return;
+        } else {
+            markers.put(block, expiry);
+        }
+        write(container, markers);
+    }
+    
+    /**
+     * Remove cage blocks in a chunk that no active cage owns or that are past their expiry
+     */
+    public void recoverChunk(Chunk chunk) {
+        PersistentDataContainer container = chunk.getPersistentDataContainer();
+        if (!container.has(key, PersistentDataType.LONG_ARRAY)) return;
+        
+        Gem gem = plugin.getGemManager().getLoadedGem(IceGem.ID);
+        IceGem iceGem = gem instanceof IceGem ? (IceGem) gem : null;
+        World world = chunk.getWorld();
+        long now = System.currentTimeMillis();
+        
+        Map<Long, Long> markers = read(container);
+        long[] stale = new long[markers.size()];
+        int count = 0;
+        Iterator<Map.Entry<Long, Long>> iterator = markers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Long> marker = iterator.next();
+            boolean active = iceGem != null && iceGem.isIceCageBlock(world, marker.getKey());
+            if (!active || marker.getValue() <= now) {
+                stale[count++] = marker.getKey();
+                iterator.remove();
+            }
+        }
+        if (count == 0) return;
+        
+        write(container, markers);
+        // Edited through the queue rather than inside the chunk load itself
+        plugin.getBlockEditQueue().submit(world, stale, count, Material.HONEY_BLOCK, Material.AIR, true,
+                (block, applied) -> { });
+        plugin.getLogger().info("Removing " + count + " leftover ice cage blocks in chunk "
+                + chunk.getX() + ", " + chunk.getZ() + " of " + world.getName());
+    }
+    
+    /**
+     * Recover chunks that were already loaded before the plugin enabled (e.g., spawn chunks)
+     */
+    public void recoverLoadedChunks() {
+        for (World world : Bukkit.getWorlds()) {
+            for (Chunk chunk : world.getLoadedChunks()) {
+                recoverChunk(chunk);
+            }
+        }
+    }
+    
+    private Map<Long, Long> read(PersistentDataContainer container) {
+        long[] pairs = container.getOrDefault(key, PersistentDataType.LONG_ARRAY, new long[0]);
+        Map<Long, Long> markers = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < pairs.length; i += 2) {
+            markers.put(pairs[i], pairs[i + 1]);
+        }
+        return markers;
+    }
+    
+    private void write(PersistentDataContainer container, Map<Long, Long> markers) {
+        if (markers.isEmpty()) {
+            container.remove(key);
+            return;
+        }
+        
+        long[] pairs = new long[markers.size() * 2];
+        int index = 0;
+        for (Map.Entry<Long, Long> marker : markers.entrySet()) {
+            pairs[index++] = marker.getKey();
+            pairs[index++] = marker.getValue();
+        }
+        container.set(key, PersistentDataType.LONG_ARRAY, pairs);
+    }
+}
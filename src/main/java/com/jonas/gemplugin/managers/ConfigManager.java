@@ -1,6 +1,7 @@
 package com.jonas.gemplugin.managers;
 
 import com.jonas.gemplugin.GemPlugin;
+import com.jonas.gemplugin.utils.CooldownDisplay;
 import org.bukkit.configuration.file.FileConfiguration;
 
 /**
@@ -62,6 +63,41 @@ public class ConfigManager {
         plugin.saveConfig();
     }
     
+    /**
+     * Get where cooldowns are displayed (xp-bar, action-bar or boss-bar)
+     */
+    public CooldownDisplay.Mode getCooldownDisplayMode() {
+        return CooldownDisplay.Mode.fromConfig(config.getString("cooldown-display", "xp-bar"));
+    }
+    
+    /**
+     * Get the trust storage backend ("binary" or "sqlite")
+     */
+    public String getTrustStorage() {
+        return config.getString("trust-storage", "binary").trim().toLowerCase();
+    }
+    
+    /**
+     * Get the radius of the ice cage in blocks
+     */
+    public int getIceCageRadius() {
+        return Math.max(1, Math.min(32, config.getInt("ice-cage-radius", 4)));
+    }
+    
+    /**
+     * Check if ice cages are shown to clients only (ice-cage-mode: client) instead of placed in the world
+     */
+    public boolean isClientSideIceCage() {
+        return "client".equalsIgnoreCase(config.getString("ice-cage-mode", "world").trim());
+    }
+    
+    /**
+     * Get how much of each tick queued block edits may use, in microseconds
+     */
+    public long getBlockEditBudgetMicros() {
+        return Math.max(50L, config.getLong("block-edit-budget", 2000L));
+    }
+    
     /**
      * Get the underlying config
      */
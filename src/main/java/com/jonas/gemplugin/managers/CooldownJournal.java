@@ -0,0 +1,175 @@
+package com.jonas.gemplugin.managers;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only binary journal of cooldown expiries.
+ * Every write happens on a dedicated background thread; callers only queue records.
+ * Record layout: UUID (two longs), ability key (modified UTF-8), expiry in epoch millis (0 = cleared).
+ */
+public class CooldownJournal {
+    
+    private static final int MAGIC = 0x47434A31; // "GCJ1"
+    
+    private final File file;
+    private final Logger logger;
+    private final ExecutorService writer;
+    // Only touched on the writer thread
+    private DataOutputStream out;
+    // Heuristic only, so unsynchronised updates are fine
+    private volatile int recordsSinceCompaction;
+    
+    public CooldownJournal(File file, Logger logger) {
+        this.file = file;
+        this.logger = logger;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "GemPlugin-CooldownJournal");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Read the journal and return the latest unexpired expiry per player and ability.
+     * Blocking; call off the main thread. A truncated trailing record (e.g., from a crash) is ignored.
+     */
+    public Map<UUID, Map<String, Long>> load() {
+        Map<UUID, Map<String, Long>> result = new HashMap<>();
+        if (!file.exists()) return result;
+        
+        int records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                logger.warning("Ignoring " + file.getName() + ": unrecognised format");
+                return result;
+            }
+            
+            while (true) {
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                String abilityKey = in.readUTF();
+                long expiry = in.readLong();
+                result.computeIfAbsent(uuid, k -> new HashMap<>()).put(abilityKey, expiry);
+                records++;
+            }
+        } catch (EOFException e) {
+            // End of journal (or a partially written last record)
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not read " + file.getName(), e);
+        }
+        recordsSinceCompaction += records;
+        
+        long now = System.currentTimeMillis();
+        result.values().forEach(abilities -> abilities.values().removeIf(expiry -> expiry <= now));
+        result.values().removeIf(Map::isEmpty);
+        return result;
+    }
+    
+    /**
+     * Queue a cooldown record for appending
+     *
+     * @param expiryMillis expiry in epoch millis, or 0 if the cooldown was cleared
+     */
+    public void append(UUID uuid, String abilityKey, long expiryMillis) {
+        recordsSinceCompaction++;
+        submit(() -> {
+            DataOutputStream stream = openForAppend();
+            stream.writeLong(uuid.getMostSignificantBits());
+            stream.writeLong(uuid.getLeastSignificantBits());
+            stream.writeUTF(abilityKey);
+            stream.writeLong(expiryMillis);
+            stream.flush();
+        });
+    }
+    
+    /**
+     * Get the number of records appended since the journal was last compacted
+     */
+    public int getRecordsSinceCompaction() {
+        return recordsSinceCompaction;
+    }
+    
+    /**
+     * Queue a rewrite of the journal containing only the given live cooldowns.
+     * The snapshot must not be modified afterwards. Records appended after this call
+     * land in the new file, since all writes share one thread.
+     */
+    public void compact(Map<UUID, Map<String, Long>> snapshot) {
+        recordsSinceCompaction = 0;
+        submit(() -> {
+            closeStream();
+            
+            File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+            try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                stream.writeInt(MAGIC);
+                for (Map.Entry<UUID, Map<String, Long>> entry : snapshot.entrySet()) {
+                    for (Map.Entry<String, Long> cooldown : entry.getValue().entrySet()) {
+                        stream.writeLong(entry.getKey().getMostSignificantBits());
+                        stream.writeLong(entry.getKey().getLeastSignificantBits());
+                        stream.writeUTF(cooldown.getKey());
+                        stream.writeLong(cooldown.getValue());
+                    }
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        });
+    }
+    
+    /**
+     * Finish all queued writes and close the journal
+     */
+    public void close() {
+        submit(this::closeStream);
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warning("Timed out flushing " + file.getName());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private DataOutputStream openForAppend() throws IOException {
+        if (out == null) {
+            file.getParentFile().mkdirs();
+            boolean fresh = !file.exists() || file.length() == 0;
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            if (fresh) {
+                out.writeInt(MAGIC);
+            }
+        }
+        return out;
+    }
+    
+    private void closeStream() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+    
+    private void submit(IOTask task) {
+        writer.execute(() -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not write " + file.getName(), e);
+            }
+        });
+    }
+    
+    @FunctionalInterface
+    private interface IOTask {
+        void run() throws IOException;
+    }
+}
@@ -2,90 +2,169 @@ package com.jonas.gemplugin.managers;
 
 import com.jonas.gemplugin.GemPlugin;
 import com.jonas.gemplugin.utils.CooldownDisplay;
+import com.jonas.gemplugin.utils.TickClock;
+import net.kyori.adventure.bossbar.BossBar;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.scheduler.BukkitTask;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.io.File;
+import java.util.*;
 
 /**
  * Manages cooldowns for gem abilities
  */
 public class CooldownManager {
     
+    private static final long HUD_PERIOD_TICKS = 5L;
+    private static final long COMPACT_PERIOD_TICKS = 6000L;
+    // Journal records written since the last compaction before it is worth rewriting
+    private static final int COMPACT_THRESHOLD = 256;
+    
     private final GemPlugin plugin;
-    private final Map<UUID, Map<String, Long>> cooldowns;
-    private final Map<UUID, BukkitTask> displayTasks;
+    // Ability keys (e.g. "astra_primary") interned to dense int IDs
+    private final Map<String, Integer> abilityIds;
+    private final List<String> abilityKeys;
+    // Per-player expiry ticks, indexed by ability ID (0 = no cooldown)
+    private final Map<UUID, long[]> cooldowns;
+    // Players with a cooldown on screen; walked by the single HUD ticker
+    private final Map<UUID, CooldownHud> huds;
+    private BukkitTask hudTask;
+    // Persisted cooldowns of players who are offline, restored when they join.
+    // Kept as epoch millis like the journal, since server ticks restart from zero.
+    private final Map<UUID, Map<String, Long>> pending;
+    private final CooldownJournal journal;
+    private BukkitTask compactTask;
+    private boolean journalLoaded;
+    // Cooldowns set or cleared before the journal finished loading; the replay must not
+    // overwrite them with older records. Dropped once the load completes.
+    private final Map<UUID, Set<String>> changedDuringLoad;
     
     public CooldownManager(GemPlugin plugin) {
         this.plugin = plugin;
+        this.abilityIds = new HashMap<>();
+        this.abilityKeys = new ArrayList<>();
         this.cooldowns = new HashMap<>();
-        this.displayTasks = new HashMap<>();
+        this.huds = new LinkedHashMap<>();
+        this.pending = new HashMap<>();
+        this.changedDuringLoad = new HashMap<>();
+        this.journal = new CooldownJournal(new File(plugin.getDataFolder(), "cooldowns.journal"), plugin.getLogger());
+        loadJournal();
+    }
+    
+    /**
+     * Read the journal off the main thread, then hand the result back to it
+     */
+    private void loadJournal() {
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            Map<UUID, Map<String, Long>> loaded = journal.load();
+            if (!plugin.isEnabled()) return;
+            
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                for (Map.Entry<UUID, Map<String, Long>> entry : loaded.entrySet()) {
+                    Set<String> changed = changedDuringLoad.get(entry.getKey());
+                    if (changed != null) {
+                        entry.getValue().keySet().removeAll(changed);
+                    }
+                    
+                    Player player = Bukkit.getPlayer(entry.getKey());
+                    if (player != null) {
+                        restore(player, entry.getValue());
+                    } else {
+                        Map<String, Long> saved = pending.computeIfAbsent(entry.getKey(), k -> new HashMap<>());
+                        entry.getValue().forEach((key, expiry) -> saved.merge(key, expiry, Math::max));
+                    }
+                }
+                journalLoaded = true;
+                changedDuringLoad.clear();
+                compactTask = Bukkit.getScheduler().runTaskTimer(plugin, this::compactJournal,
+                        COMPACT_PERIOD_TICKS, COMPACT_PERIOD_TICKS);
+            });
+        });
+    }
+    
+    /**
+     * Get the int ID for an ability key, assigning one on first use.
+     * Gems resolve their IDs once and use the int overloads afterwards.
+     */
+    public int getAbilityId(String abilityKey) {
+        Integer id = abilityIds.get(abilityKey);
+        if (id == null) {
+            id = abilityKeys.size();
+            abilityKeys.add(abilityKey);
+            abilityIds.put(abilityKey, id);
+        }
+        return id;
+    }
+    
+    /**
+     * Get the ability key for an ability ID
+     */
+    public String getAbilityKey(int abilityId) {
+        return abilityKeys.get(abilityId);
+    }
+    
+    /**
+     * Set a cooldown for a player
+     */
+    public void setCooldown(Player player, int abilityId, int seconds) {
+        long expiry = clock().currentTick() + TickClock.seconds(seconds);
+        getExpiries(player.getUniqueId(), abilityId)[abilityId] = expiry;
+        markChanged(player.getUniqueId(), getAbilityKey(abilityId));
+        journal.append(player.getUniqueId(), getAbilityKey(abilityId), System.currentTimeMillis() + seconds * 1000L);
+        
+        // Show it on the cooldown HUD
+        showHud(player, abilityId, seconds);
     }
     
     /**
      * Set a cooldown for a player
      */
     public void setCooldown(Player player, String abilityKey, int seconds) {
-        UUID uuid = player.getUniqueId();
-        cooldowns.computeIfAbsent(uuid, k -> new HashMap<>());
-        cooldowns.get(uuid).put(abilityKey, System.currentTimeMillis() + (seconds * 1000L));
+        setCooldown(player, getAbilityId(abilityKey), seconds);
+    }
+    
+    /**
+     * Get remaining cooldown time in seconds, or 0 if the ability is ready.
+     * Answers both "is it on cooldown" and "for how long" with one lookup and no boxing.
+     */
+    public int remaining(Player player, int abilityId) {
+        long[] expiries = cooldowns.get(player.getUniqueId());
+        if (expiries == null || abilityId >= expiries.length) return 0;
         
-        // Start display task
-        startDisplayTask(player, abilityKey, seconds);
+        long remaining = expiries[abilityId] - clock().currentTick();
+        if (remaining <= 0) return 0;
+        
+        return (int) ((remaining + TickClock.TICKS_PER_SECOND - 1) / TickClock.TICKS_PER_SECOND);
     }
     
     /**
      * Check if a player has a cooldown
      */
     public boolean hasCooldown(Player player, String abilityKey) {
-        UUID uuid = player.getUniqueId();
-        if (!cooldowns.containsKey(uuid)) return false;
-        
-        Map<String, Long> playerCooldowns = cooldowns.get(uuid);
-        if (!playerCooldowns.containsKey(abilityKey)) return false;
-        
-        long expiry = playerCooldowns.get(abilityKey);
-        if (System.currentTimeMillis() >= expiry) {
-            playerCooldowns.remove(abilityKey);
-            return false;
-        }
-        
-        return true;
+        return getRemainingCooldown(player, abilityKey) > 0;
     }
     
     /**
      * Get remaining cooldown time in seconds
      */
     public int getRemainingCooldown(Player player, String abilityKey) {
-        UUID uuid = player.getUniqueId();
-        if (!cooldowns.containsKey(uuid)) return 0;
-        
-        Map<String, Long> playerCooldowns = cooldowns.get(uuid);
-        if (!playerCooldowns.containsKey(abilityKey)) return 0;
-        
-        long expiry = playerCooldowns.get(abilityKey);
-        long remaining = expiry - System.currentTimeMillis();
-        
-        if (remaining <= 0) {
-            playerCooldowns.remove(abilityKey);
-            return 0;
-        }
-        
-        return (int) Math.ceil(remaining / 1000.0);
+        Integer abilityId = abilityIds.get(abilityKey);
+        return abilityId != null ? remaining(player, abilityId) : 0;
     }
     
     /**
      * Clear a specific cooldown
      */
     public void clearCooldown(Player player, String abilityKey) {
-        UUID uuid = player.getUniqueId();
-        if (cooldowns.containsKey(uuid)) {
-            cooldowns.get(uuid).remove(abilityKey);
+        long[] expiries = cooldowns.get(player.getUniqueId());
+        Integer abilityId = abilityIds.get(abilityKey);
+        if (expiries != null && abilityId != null && abilityId < expiries.length && expiries[abilityId] != 0L) {
+            expiries[abilityId] = 0L;
+            markChanged(player.getUniqueId(), abilityKey);
+            journal.append(player.getUniqueId(), abilityKey, 0L);
         }
-        stopDisplayTask(player);
+        hideHud(player);
     }
     
     /**
@@ -93,44 +172,205 @@ public class CooldownManager {
      */
     public void clearAllCooldowns(Player player) {
         UUID uuid = player.getUniqueId();
-        cooldowns.remove(uuid);
-        stopDisplayTask(player);
+        long[] expiries = cooldowns.remove(uuid);
+        long now = clock().currentTick();
+        for (int abilityId = 0; abilityId < abilityKeys.size(); abilityId++) {
+            // While the journal is loading, saved cooldowns are not in the table yet, so clear every ability
+            boolean active = expiries != null && abilityId < expiries.length && expiries[abilityId] > now;
+            if (active || !journalLoaded) {
+                markChanged(uuid, getAbilityKey(abilityId));
+                journal.append(uuid, getAbilityKey(abilityId), 0L);
+            }
+        }
+        hideHud(player);
     }
     
     /**
-     * Start the cooldown display task
+     * Remember a cooldown changed while the journal is still loading, so the replay leaves it alone
      */
-    private void startDisplayTask(Player player, String abilityKey, int maxSeconds) {
-        stopDisplayTask(player);
-        
+    private void markChanged(UUID uuid, String abilityKey) {
+        if (!journalLoaded) {
+            changedDuringLoad.computeIfAbsent(uuid, k -> new HashSet<>()).add(abilityKey);
+        }
+    }
+    
+    /**
+     * Restore a joining player's persisted cooldowns
+     */
+    public void restoreCooldowns(Player player) {
+        Map<String, Long> saved = pending.remove(player.getUniqueId());
+        if (saved != null) {
+            restore(player, saved);
+        }
+    }
+    
+    /**
+     * Move a leaving player's cooldowns out of the live table. They stay in the journal,
+     * so nothing is written here.
+     */
+    public void unloadCooldowns(Player player) {
         UUID uuid = player.getUniqueId();
-        BukkitTask task = Bukkit.getScheduler().runTaskTimer(plugin, () -> {
-            if (!player.isOnline()) {
-                stopDisplayTask(player);
-                return;
+        long[] expiries = cooldowns.remove(uuid);
+        if (expiries != null) {
+            Map<String, Long> saved = toMap(expiries);
+            if (!saved.isEmpty()) {
+                pending.put(uuid, saved);
             }
+        }
+        hideHud(player);
+    }
+    
+    private void restore(Player player, Map<String, Long> saved) {
+        long nowMillis = System.currentTimeMillis();
+        long nowTick = clock().currentTick();
+        int longestId = -1;
+        long longestExpiry = 0L;
+        
+        for (Map.Entry<String, Long> entry : saved.entrySet()) {
+            long remainingMillis = entry.getValue() - nowMillis;
+            if (remainingMillis <= 0) continue;
             
-            int remaining = getRemainingCooldown(player, abilityKey);
-            if (remaining <= 0) {
-                CooldownDisplay.clearXPBar(player);
-                stopDisplayTask(player);
-                return;
+            long expiry = nowTick + (remainingMillis + TickClock.MILLIS_PER_TICK - 1) / TickClock.MILLIS_PER_TICK;
+            int abilityId = getAbilityId(entry.getKey());
+            long[] expiries = getExpiries(player.getUniqueId(), abilityId);
+            expiries[abilityId] = Math.max(expiries[abilityId], expiry);
+            if (expiry > longestExpiry) {
+                longestExpiry = expiry;
+                longestId = abilityId;
             }
-            
-            CooldownDisplay.updateXPBar(player, remaining, maxSeconds);
-        }, 0L, 20L); // Run every second (20 ticks)
+        }
         
-        displayTasks.put(uuid, task);
+        if (longestId >= 0) {
+            // Scale the bar against the full configured cooldown, not what happens to be left
+            int remaining = remaining(player, longestId);
+            showHud(player, longestId, Math.max(getConfiguredCooldown(getAbilityKey(longestId)), remaining));
+        }
     }
     
     /**
-     * Stop the cooldown display task
+     * Get the configured length of an ability's cooldown, from a key like "fire_primary"
      */
-    private void stopDisplayTask(Player player) {
-        UUID uuid = player.getUniqueId();
-        BukkitTask task = displayTasks.remove(uuid);
-        if (task != null) {
-            task.cancel();
+    private int getConfiguredCooldown(String abilityKey) {
+        int separator = abilityKey.indexOf('_');
+        if (separator < 0) return 0;
+        return plugin.getConfigManager().getCooldown(abilityKey.substring(0, separator), abilityKey.substring(separator + 1));
+    }
+    
+    /**
+     * Get a player's expiry slots, growing them to cover the given ability ID
+     */
+    private long[] getExpiries(UUID uuid, int abilityId) {
+        long[] expiries = cooldowns.get(uuid);
+        if (expiries == null || expiries.length <= abilityId) {
+            expiries = expiries == null
+                    ? new long[abilityKeys.size()]
+                    : Arrays.copyOf(expiries, abilityKeys.size());
+            cooldowns.put(uuid, expiries);
+        }
+        return expiries;
+    }
+    
+    /**
+     * Convert a player's unexpired expiry ticks to epoch millis keyed by ability
+     */
+    private Map<String, Long> toMap(long[] expiries) {
+        long nowMillis = System.currentTimeMillis();
+        long nowTick = clock().currentTick();
+        Map<String, Long> map = new HashMap<>();
+        for (int abilityId = 0; abilityId < expiries.length; abilityId++) {
+            if (expiries[abilityId] > nowTick) {
+                map.put(getAbilityKey(abilityId), nowMillis + (expiries[abilityId] - nowTick) * TickClock.MILLIS_PER_TICK);
+            }
+        }
+        return map;
+    }
+    
+    private TickClock clock() {
+        return plugin.getTickClock();
+    }
+    
+    /**
+     * Build a copy of every unexpired cooldown, online and offline, dropping expired offline entries
+     */
+    private Map<UUID, Map<String, Long>> snapshot() {
+        long now = System.currentTimeMillis();
+        pending.values().forEach(saved -> saved.values().removeIf(expiry -> expiry <= now));
+        pending.values().removeIf(Map::isEmpty);
+        
+        Map<UUID, Map<String, Long>> snapshot = new HashMap<>();
+        pending.forEach((uuid, saved) -> snapshot.put(uuid, new HashMap<>(saved)));
+        cooldowns.forEach((uuid, expiries) -> {
+            Map<String, Long> live = toMap(expiries);
+            if (!live.isEmpty()) {
+                snapshot.put(uuid, live);
+            }
+        });
+        return snapshot;
+    }
+    
+    /**
+     * Rewrite the journal once enough superseded records have piled up
+     */
+    private void compactJournal() {
+        if (journal.getRecordsSinceCompaction() >= COMPACT_THRESHOLD) {
+            journal.compact(snapshot());
+        }
+    }
+    
+    /**
+     * Put a cooldown on the player's HUD, replacing whatever it showed before
+     */
+    private void showHud(Player player, int abilityId, int maxSeconds) {
+        CooldownHud previous = huds.remove(player.getUniqueId());
+        if (previous != null) {
+            previous.clear();
+        }
+        
+        CooldownHud hud = new CooldownHud(player, abilityId, getGemName(getAbilityKey(abilityId)), maxSeconds,
+                plugin.getConfigManager().getCooldownDisplayMode());
+        huds.put(player.getUniqueId(), hud);
+        hud.render(remaining(player, abilityId));
+        
+        if (hudTask == null) {
+            hudTask = Bukkit.getScheduler().runTaskTimer(plugin, this::tickHuds, HUD_PERIOD_TICKS, HUD_PERIOD_TICKS);
+        }
+    }
+    
+    /**
+     * Remove the cooldown from the player's HUD
+     */
+    private void hideHud(Player player) {
+        CooldownHud hud = huds.remove(player.getUniqueId());
+        if (hud != null && player.isOnline()) {
+            hud.clear();
+        }
+    }
+    
+    /**
+     * Single plugin-wide HUD ticker. Only pushes an update when the displayed value changes,
+     * and stops itself once no player has a cooldown on screen.
+     */
+    private void tickHuds() {
+        Iterator<CooldownHud> iterator = huds.values().iterator();
+        while (iterator.hasNext()) {
+            CooldownHud hud = iterator.next();
+            if (!hud.player.isOnline()) {
+                iterator.remove();
+                continue;
+            }
+            
+            int remaining = remaining(hud.player, hud.abilityId);
+            if (remaining <= 0) {
+                hud.clear();
+                iterator.remove();
+            } else {
+                hud.render(remaining);
+            }
+        }
+        
+        if (huds.isEmpty() && hudTask != null) {
+            hudTask.cancel();
+            hudTask = null;
         }
     }
     
@@ -149,10 +389,86 @@ public class CooldownManager {
      * Cleanup on plugin disable
      */
     public void cleanup() {
-        for (BukkitTask task : displayTasks.values()) {
-            task.cancel();
+        if (hudTask != null) {
+            hudTask.cancel();
+            hudTask = null;
+        }
+        for (CooldownHud hud : huds.values()) {
+            if (hud.player.isOnline()) {
+                hud.clear();
+            }
         }
-        displayTasks.clear();
+        huds.clear();
+        
+        if (compactTask != null) {
+            compactTask.cancel();
+            compactTask = null;
+        }
+        // Only rewrite once the journal has been read, or unread entries would be lost
+        if (journalLoaded) {
+            journal.compact(snapshot());
+        }
+        journal.close();
         cooldowns.clear();
+        pending.clear();
+    }
+    
+    /**
+     * A cooldown shown on one player's screen
+     */
+    private static class CooldownHud {
+        final Player player;
+        final int abilityId;
+        final String label;
+        final int maxSeconds;
+        final CooldownDisplay.Mode mode;
+        BossBar bossBar;
+        int lastShown = -1;
+        
+        CooldownHud(Player player, int abilityId, String label, int maxSeconds, CooldownDisplay.Mode mode) {
+            this.player = player;
+            this.abilityId = abilityId;
+            this.label = label;
+            this.maxSeconds = maxSeconds;
+            this.mode = mode;
+        }
+        
+        void render(int remaining) {
+            if (remaining == lastShown) return;
+            lastShown = remaining;
+            
+            switch (mode) {
+                case ACTION_BAR:
+                    CooldownDisplay.updateActionBar(player, label, remaining);
+                    break;
+                case BOSS_BAR:
+                    if (bossBar == null) {
+                        bossBar = CooldownDisplay.createBossBar(label, remaining, maxSeconds);
+                        player.showBossBar(bossBar);
+                    } else {
+                        CooldownDisplay.updateBossBar(bossBar, label, remaining, maxSeconds);
+                    }
+                    break;
+                default:
+                    CooldownDisplay.updateXPBar(player, remaining, maxSeconds);
+                    break;
+            }
+        }
+        
+        void clear() {
+            switch (mode) {
+                case ACTION_BAR:
+                    CooldownDisplay.clearActionBar(player);
+                    break;
+                case BOSS_BAR:
+                    if (bossBar != null) {
+                        player.hideBossBar(bossBar);
+                    }
+                    break;
+                default:
+                    CooldownDisplay.clearXPBar(player);
+                    break;
+            }
+        }
     }
 }
@@ -2,16 +2,18 @@ package com.jonas.gemplugin.managers;
 
 import com.jonas.gemplugin.GemPlugin;
 import com.jonas.gemplugin.gems.*;
+import com.jonas.gemplugin.utils.GemItemClassifier;
+import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.persistence.PersistentDataType;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
+import java.util.function.Function;
 
 /**
  * Manages gem creation and identification
@@ -19,55 +21,119 @@ import java.util.UUID;
 public class GemManager {
     
     private final GemPlugin plugin;
-    private final NamespacedKey gemKey;
+    private final NamespacedKey gemIdKey;
+    private final NamespacedKey legacyGemKey;
     private final NamespacedKey timestampKey;
-    private final Map<String, Gem> gems;
+    // Registry indexed by the numeric gem ID stored on items
+    private final GemRegistry registry;
     // Per-player gem timestamp tracking: UUID -> (gem_type -> timestamp)
     private final Map<UUID, Map<String, Long>> playerGemTimestamps;
+    // Per-player resolved offhand gem, refreshed only when the offhand slot changes
+    private final Map<UUID, Gem> activeGems;
+    // Per-player gem whose passive effects are currently applied
+    private final Map<UUID, Gem> appliedPassives;
+    // Players whose applied passives were wiped externally (milk, totem, respawn) and need reapplying
+    private final Set<UUID> stalePassives;
+    private final GemItemClassifier classifier;
+    private final GemSlotIndex slotIndex;
+    // Fully built gem items (name, lore, ID) indexed by gem ID; createGem clones these
+    private ItemStack[] prototypes;
     
     public GemManager(GemPlugin plugin) {
         this.plugin = plugin;
-        this.gemKey = new NamespacedKey(plugin, "gem_type");
+        this.gemIdKey = new NamespacedKey(plugin, "gem_id");
+        this.legacyGemKey = new NamespacedKey(plugin, "gem_type");
         this.timestampKey = new NamespacedKey(plugin, "gem_timestamp");
-        this.gems = new HashMap<>();
+        this.registry = new GemRegistry(plugin);
         this.playerGemTimestamps = new HashMap<>();
+        this.activeGems = new HashMap<>();
+        this.appliedPassives = new HashMap<>();
+        this.stalePassives = new HashSet<>();
+        this.slotIndex = new GemSlotIndex();
         
         registerGems();
+        
+        this.classifier = new GemItemClassifier(gemIdKey, legacyGemKey, timestampKey,
+                this::getLegacyGemId, registry.getMaterials());
+        this.prototypes = new ItemStack[registry.getIdLimit()];
     }
     
     /**
-     * Register all gem types
+     * Register the built-in gem types.
+     * Gems are only constructed when first used, so disabled gems cost nothing.
      */
     private void registerGems() {
-        gems.put("strength", new StrengthGem(plugin));
-        gems.put("fire", new FireGem(plugin));
-        gems.put("speed", new SpeedGem(plugin));
-        gems.put("ice", new IceGem(plugin));
-        gems.put("invis", new InvisGem(plugin));
-        gems.put("astra", new AstraGem(plugin));
+        registry.register(StrengthGem.ID, "strength", StrengthGem.MATERIAL, StrengthGem::new);
+        registry.register(FireGem.ID, "fire", FireGem.MATERIAL, FireGem::new);
+        registry.register(SpeedGem.ID, "speed", SpeedGem.MATERIAL, SpeedGem::new);
+        registry.register(IceGem.ID, "ice", IceGem.MATERIAL, IceGem::new);
+        registry.register(InvisGem.ID, "invis", InvisGem.MATERIAL, InvisGem::new);
+        registry.register(AstraGem.ID, "astra", AstraGem.MATERIAL, AstraGem::new);
     }
     
     /**
-     * Create a gem item
+     * Register an additional gem type, e.g. from a companion plugin.
+     * The factory is not called until the gem is first used.
+     *
+     * @param id       stable numeric ID stored on gem items (1-127, never reused)
+     * @param name     lowercase gem name used in commands and config
+     * @param material item material of the gem
+     * @param factory  creates the gem the first time it is needed
      */
-    public ItemStack createGem(String gemType) {
-        Gem gem = gems.get(gemType.toLowerCase());
-        if (gem == null) return null;
-        
+    public void registerGem(int id, String name, Material material, Function<GemPlugin, ? extends Gem> factory) {
+        registry.register(id, name, material, factory);
+        classifier.addGemMaterial(material);
+        if (prototypes.length < registry.getIdLimit()) {
+            prototypes = Arrays.copyOf(prototypes, registry.getIdLimit());
+        }
+    }
+    
+    /**
+     * Drop the prototype items so they are rebuilt from the current gem definitions.
+     * Called on config reload.
+     */
+    public void rebuildPrototypes() {
+        prototypes = new ItemStack[registry.getIdLimit()];
+    }
+    
+    /**
+     * Build a gem item with everything except the per-item timestamp
+     */
+    private ItemStack buildPrototype(Gem gem) {
         ItemStack item = new ItemStack(gem.getMaterial());
         ItemMeta meta = item.getItemMeta();
         
         if (meta != null) {
             meta.displayName(gem.getDisplayName());
             meta.lore(gem.getLore());
-            meta.getPersistentDataContainer().set(gemKey, PersistentDataType.STRING, gemType.toLowerCase());
-            meta.getPersistentDataContainer().set(timestampKey, PersistentDataType.LONG, System.currentTimeMillis());
+            meta.getPersistentDataContainer().set(gemIdKey, PersistentDataType.BYTE, (byte) gem.getId());
             item.setItemMeta(meta);
         }
         
         return item;
     }
     
+    /**
+     * Create a gem item by cloning its prototype and stamping the timestamp
+     */
+    public ItemStack createGem(String gemType) {
+        Gem gem = getGem(gemType);
+        if (gem == null) return null;
+        
+        // Prototypes are built on first use so unused gems are never constructed
+        ItemStack prototype = prototypes[gem.getId()];
+        if (prototype == null) {
+            prototype = buildPrototype(gem);
+            prototypes[gem.getId()] = prototype;
+        }
+        
+        ItemStack item = prototype.clone();
+        item.editMeta(meta -> meta.getPersistentDataContainer()
+                .set(timestampKey, PersistentDataType.LONG, System.currentTimeMillis()));
+        
+        return item;
+    }
+    
     /**
      * Set the timestamp for a gem item
      */
@@ -85,52 +151,216 @@ public class GemManager {
      * Get the timestamp for a gem item
      */
     public long getGemTimestamp(ItemStack item) {
-        if (!isGem(item)) return Long.MAX_VALUE;
-        
-        ItemMeta meta = item.getItemMeta();
-        if (meta != null && meta.getPersistentDataContainer().has(timestampKey, PersistentDataType.LONG)) {
-            return meta.getPersistentDataContainer().get(timestampKey, PersistentDataType.LONG);
-        }
-        // If no timestamp, treat as very old (should be kept)
-        return Long.MIN_VALUE;
+        return classifier.getTimestamp(item);
     }
     
     /**
      * Check if an item is a gem
      */
     public boolean isGem(ItemStack item) {
-        if (item == null || !item.hasItemMeta()) return false;
-        
-        ItemMeta meta = item.getItemMeta();
-        return meta.getPersistentDataContainer().has(gemKey, PersistentDataType.STRING);
+        return classifier.isGem(item);
+    }
+    
+    /**
+     * Get the numeric gem ID from an item, or 0 if it is not a gem
+     */
+    public int getGemId(ItemStack item) {
+        return classifier.getGemId(item);
     }
     
     /**
      * Get the gem type from an item
      */
     public String getGemType(ItemStack item) {
-        if (!isGem(item)) return null;
+        return registry.getName(classifier.getGemId(item));
+    }
+    
+    /**
+     * Read an item's gem ID and timestamp in one pass
+     *
+     * @return the gem info, or null if the item is not a gem
+     */
+    public GemItemClassifier.GemInfo classifyItem(ItemStack item) {
+        return classifier.classify(item);
+    }
+    
+    /**
+     * Rewrite an item still carrying the old string type tag to the numeric gem ID.
+     * The item is edited in place, so this must be given the live inventory stack.
+     *
+     * @return true if the item was migrated
+     */
+    public boolean migrateLegacyGem(ItemStack item) {
+        GemItemClassifier.GemInfo info = classifier.classify(item);
+        if (info == null || !info.legacy()) return false;
         
-        ItemMeta meta = item.getItemMeta();
-        return meta.getPersistentDataContainer().get(gemKey, PersistentDataType.STRING);
+        item.editMeta(meta -> {
+            meta.getPersistentDataContainer().set(gemIdKey, PersistentDataType.BYTE, (byte) info.id());
+            meta.getPersistentDataContainer().remove(legacyGemKey);
+        });
+        return true;
+    }
+    
+    /**
+     * Rebuild a player's gem slot index from a full inventory scan.
+     * Also migrates legacy gem items and records timestamps for gems not yet tracked.
+     */
+    public void indexInventory(Player player) {
+        slotIndex.clear(player);
+        
+        PlayerInventory inv = player.getInventory();
+        for (int i = 0; i < inv.getSize(); i++) {
+            ItemStack item = inv.getItem(i);
+            GemItemClassifier.GemInfo info = classifier.classify(item);
+            if (info == null) continue;
+            
+            // Rewrite gems created before numeric gem IDs
+            if (info.legacy()) {
+                migrateLegacyGem(item);
+            }
+            
+            slotIndex.update(player, i, info.id());
+            recordGemIfUntracked(player, info.id());
+        }
+    }
+    
+    /**
+     * Get the per-player index of slots holding gems
+     */
+    public GemSlotIndex getSlotIndex() {
+        return slotIndex;
+    }
+    
+    /**
+     * Resolve a gem type name from an old string-tagged item to its numeric ID
+     */
+    private int getLegacyGemId(String gemType) {
+        return registry.getId(gemType);
+    }
+    
+    /**
+     * Get a gem instance by its numeric ID, constructing it on first use
+     */
+    public Gem getGem(int id) {
+        return registry.get(id);
     }
     
     /**
-     * Get a gem instance by type
+     * Get a gem instance by type, constructing it on first use
      */
     public Gem getGem(String gemType) {
-        return gems.get(gemType.toLowerCase());
+        return registry.get(gemType);
     }
     
     /**
-     * Get the gem a player is currently holding in offhand
+     * Get a gem instance by ID only if something has already used it.
+     * Hot paths that only care about existing gem state (e.g., block protection) use this
+     * so they never construct a gem.
+     */
+    public Gem getLoadedGem(int id) {
+        return registry.getIfLoaded(id);
+    }
+    
+    /**
+     * Check if a gem type is registered
+     */
+    public boolean isGemType(String gemType) {
+        return registry.isRegistered(gemType);
+    }
+    
+    /**
+     * Get the names of all registered gem types (read-only view)
+     */
+    public Collection<String> getGemTypes() {
+        return registry.getNames();
+    }
+    
+    /**
+     * Get the gem a player is currently holding in offhand.
+     * Served from the active gem cache; see {@link #refreshActiveGem(Player)}.
      */
     public Gem getActiveGem(Player player) {
-        ItemStack offhand = player.getInventory().getItemInOffHand();
-        if (!isGem(offhand)) return null;
+        return activeGems.get(player.getUniqueId());
+    }
+    
+    /**
+     * Re-read the player's offhand and update the active gem cache.
+     * Must be called whenever the offhand slot may have changed.
+     */
+    public Gem refreshActiveGem(Player player) {
+        return refreshActiveGem(player, player.getInventory().getItemInOffHand());
+    }
+    
+    /**
+     * Update the active gem cache from an item known to be (or about to be) in the offhand
+     */
+    public Gem refreshActiveGem(Player player, ItemStack offhand) {
+        Gem gem = getGem(classifier.getGemId(offhand));
         
-        String gemType = getGemType(offhand);
-        return getGem(gemType);
+        if (gem == null) {
+            activeGems.remove(player.getUniqueId());
+        } else {
+            activeGems.put(player.getUniqueId(), gem);
+        }
+        return gem;
+    }
+    
+    /**
+     * Drop a player's cached active gem (e.g., on disconnect)
+     */
+    public void clearActiveGem(Player player) {
+        activeGems.remove(player.getUniqueId());
+    }
+    
+    /**
+     * Bring a player's passive effects in line with their active gem.
+     * Only runs a transition when the active gem or its enabled state changed,
+     * so calling this when nothing changed does no work and sends no packets.
+     */
+    public void syncPassiveEffects(Player player) {
+        UUID uuid = player.getUniqueId();
+        Gem active = getActiveGem(player);
+        Gem desired = active != null && plugin.getConfigManager().isGemEnabled(active.getName()) ? active : null;
+        Gem applied = appliedPassives.get(uuid);
+        boolean stale = stalePassives.remove(uuid);
+        
+        if (desired == applied && !stale) return;
+        
+        if (applied != null && applied != desired) {
+            applied.removePassiveEffects(player);
+        }
+        
+        if (desired != null) {
+            desired.applyPassiveEffects(player);
+            appliedPassives.put(uuid, desired);
+        } else {
+            appliedPassives.remove(uuid);
+        }
+    }
+    
+    /**
+     * Mark a player's applied passives as wiped by something outside the plugin.
+     * They are reapplied on the next tick without tearing down the gem's other state.
+     */
+    public void invalidatePassiveEffects(Player player) {
+        UUID uuid = player.getUniqueId();
+        if (!appliedPassives.containsKey(uuid) || !stalePassives.add(uuid)) return;
+        
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            if (player.isOnline()) {
+                syncPassiveEffects(player);
+            }
+        });
+    }
+    
+    /**
+     * Forget a player's passive state (e.g., on disconnect)
+     *
+     * @return the gem whose passives were applied, or null
+     */
+    public Gem clearPassiveState(Player player) {
+        stalePassives.remove(player.getUniqueId());
+        return appliedPassives.remove(player.getUniqueId());
     }
     
     /**
@@ -141,25 +371,23 @@ public class GemManager {
     }
     
     /**
-     * Get all registered gem types
+     * Get all gems constructed so far (read-only view)
      */
-    public Map<String, Gem> getAllGems() {
-        return new HashMap<>(gems);
+    public Collection<Gem> getAllGems() {
+        return registry.getLoadedGems();
     }
     
     /**
-     * Get the gem key for persistent data
+     * Get the gem ID key for persistent data
      */
     public NamespacedKey getGemKey() {
-        return gemKey;
+        return gemIdKey;
     }
     
     /**
      * Record when a gem enters a player's inventory
      */
     public void recordGemInInventory(Player player, ItemStack gem) {
-        if (!isGem(gem)) return;
-        
         String gemType = getGemType(gem);
         if (gemType == null) return;
         
@@ -167,6 +395,17 @@ public class GemManager {
                 .put(gemType, System.currentTimeMillis());
     }
     
+    /**
+     * Record when a gem enters a player's inventory, unless its type is already tracked
+     */
+    public void recordGemIfUntracked(Player player, int gemId) {
+        String gemType = registry.getName(gemId);
+        if (gemType == null) return;
+        
+        playerGemTimestamps.computeIfAbsent(player.getUniqueId(), k -> new HashMap<>())
+                .putIfAbsent(gemType, System.currentTimeMillis());
+    }
+    
     /**
      * Get when a gem entered a player's inventory
      */
@@ -0,0 +1,166 @@
+package com.jonas.gemplugin.managers;
+
+import com.jonas.gemplugin.GemPlugin;
+import com.jonas.gemplugin.gems.Gem;
+import org.bukkit.Material;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Registry of gem types, indexed by their numeric gem ID.
+ * Gems are registered as a factory plus the metadata needed to recognise their items,
+ * and are only constructed the first time something actually uses them.
+ */
+public class GemRegistry {
+    
+    private final GemPlugin plugin;
+    private Registration[] byId = new Registration[8];
+    private final Map<String, Registration> byName = new LinkedHashMap<>();
+    private final Collection<String> namesView = Collections.unmodifiableCollection(byName.keySet());
+    private final List<Gem> loaded = new ArrayList<>();
+    private final List<Gem> loadedView = Collections.unmodifiableList(loaded);
+    
+    public GemRegistry(GemPlugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Register a gem type
+     *
+     * @param id       stable numeric ID stored on gem items (1-127, never reused)
+     * @param name     lowercase gem name used in commands and config
+     * @param material item material of the gem
+     * @param factory  creates the gem the first time it is needed
+     */
+    public void register(int id, String name, Material material, Function<GemPlugin, ? extends Gem> factory) {
+        String key = name.toLowerCase();
+        if (id <= 0 || id > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Gem ID out of range for " + key + ": " + id);
+        }
+        if (id < byId.length && byId[id] != null) {
+            throw new IllegalArgumentException("Duplicate gem ID " + id + " for " + key);
+        }
+        if (byName.containsKey(key)) {
+            throw new IllegalArgumentException("Duplicate gem name " + key);
+        }
+        
+        if (id >= byId.length) {
+            byId = Arrays.copyOf(byId, Math.max(id + 1, byId.length * 2));
+        }
+        Registration registration = new Registration(id, key, material, factory);
+        byId[id] = registration;
+        byName.put(key, registration);
+    }
+    
+    /**
+     * Get a gem by ID, constructing it on first use
+     */
+    public Gem get(int id) {
+        Registration registration = lookup(id);
+        return registration != null ? registration.getInstance() : null;
+    }
+    
+    /**
+     * Get a gem by name, constructing it on first use
+     */
+    public Gem get(String name) {
+        Registration registration = byName.get(name.toLowerCase());
+        return registration != null ? registration.getInstance() : null;
+    }
+    
+    /**
+     * Get a gem by ID only if it has already been constructed
+     */
+    public Gem getIfLoaded(int id) {
+        Registration registration = lookup(id);
+        return registration != null ? registration.instance : null;
+    }
+    
+    /**
+     * Get a registered gem's name without constructing it
+     */
+    public String getName(int id) {
+        Registration registration = lookup(id);
+        return registration != null ? registration.name : null;
+    }
+    
+    /**
+     * Get a registered gem's ID by name, or 0 if unknown
+     */
+    public int getId(String name) {
+        Registration registration = byName.get(name.toLowerCase());
+        return registration != null ? registration.id : 0;
+    }
+    
+    /**
+     * Check if a gem name is registered
+     */
+    public boolean isRegistered(String name) {
+        return byName.containsKey(name.toLowerCase());
+    }
+    
+    /**
+     * Get the names of all registered gems, in registration order (read-only view)
+     */
+    public Collection<String> getNames() {
+        return namesView;
+    }
+    
+    /**
+     * Get the materials of all registered gems
+     */
+    public List<Material> getMaterials() {
+        List<Material> materials = new ArrayList<>();
+        for (Registration registration : byName.values()) {
+            materials.add(registration.material);
+        }
+        return materials;
+    }
+    
+    /**
+     * Get the gems constructed so far (read-only view)
+     */
+    public List<Gem> getLoadedGems() {
+        return loadedView;
+    }
+    
+    /**
+     * Get an exclusive upper bound on registered gem IDs, for sizing ID-indexed arrays
+     */
+    public int getIdLimit() {
+        return byId.length;
+    }
+    
+    private Registration lookup(int id) {
+        return id > 0 && id < byId.length ? byId[id] : null;
+    }
+    
+    private class Registration {
+        final int id;
+        final String name;
+        final Material material;
+        final Function<GemPlugin, ? extends Gem> factory;
+        Gem instance;
+        
+        Registration(int id, String name, Material material, Function<GemPlugin, ? extends Gem> factory) {
+            this.id = id;
+            this.name = name;
+            this.material = material;
+            this.factory = factory;
+        }
+        
+        Gem getInstance() {
+            if (instance == null) {
+                Gem gem = factory.apply(plugin);
+                if (gem.getId() != id || !gem.getName().equalsIgnoreCase(name) || gem.getMaterial() != material) {
+                    throw new IllegalStateException("Gem " + gem.getName() + " (ID " + gem.getId()
+                            + ") does not match its registration " + name + " (ID " + id + ")");
+                }
+                instance = gem;
+                loaded.add(gem);
+            }
+            return instance;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.jonas.gemplugin.managers;
+
+import org.bukkit.entity.Player;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Tracks which player inventory slots hold gems, so enforcement only has to look
+ * at gem slots instead of walking the whole inventory.
+ * Slots use PlayerInventory numbering (0-35 storage, 36-39 armor, 40 offhand).
+ */
+public class GemSlotIndex {
+    
+    public static final int SLOT_COUNT = 41;
+    
+    private final Map<UUID, PlayerSlots> index = new HashMap<>();
+    
+    /**
+     * Update a single slot
+     *
+     * @param gemId the gem ID now in the slot, or 0 if the slot holds no gem
+     * @return true if the slot's gem changed
+     */
+    public boolean update(Player player, int slot, int gemId) {
+        if (slot < 0 || slot >= SLOT_COUNT) return false;
+        
+        PlayerSlots slots = index.get(player.getUniqueId());
+        if (slots == null) {
+            if (gemId == 0) return false;
+            slots = new PlayerSlots();
+            index.put(player.getUniqueId(), slots);
+        }
+        
+        if (slots.gemIds[slot] == gemId) return false;
+        
+        slots.gemIds[slot] = (byte) gemId;
+        if (gemId == 0) {
+            slots.gemMask &= ~(1L << slot);
+        } else {
+            slots.gemMask |= 1L << slot;
+        }
+        return true;
+    }
+    
+    /**
+     * Get a bit mask of the slots holding gems (bit n set = slot n holds a gem)
+     */
+    public long getGemSlots(Player player) {
+        PlayerSlots slots = index.get(player.getUniqueId());
+        return slots != null ? slots.gemMask : 0L;
+    }
+    
+    /**
+     * Get the number of slots holding gems
+     */
+    public int getGemCount(Player player) {
+        return Long.bitCount(getGemSlots(player));
+    }
+    
+    /**
+     * Get the gem ID recorded for a slot, or 0 if none
+     */
+    public int getGemId(Player player, int slot) {
+        PlayerSlots slots = index.get(player.getUniqueId());
+        if (slots == null || slot < 0 || slot >= SLOT_COUNT) return 0;
+        return slots.gemIds[slot];
+    }
+    
+    /**
+     * Forget a player's slots (e.g., on disconnect or before a full rebuild)
+     */
+    public void clear(Player player) {
+        index.remove(player.getUniqueId());
+    }
+    
+    private static class PlayerSlots {
+        long gemMask;
+        final byte[] gemIds = new byte[SLOT_COUNT];
+    }
+}
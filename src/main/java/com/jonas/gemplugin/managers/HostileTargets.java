@@ -0,0 +1,92 @@
+package com.jonas.gemplugin.managers;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Snapshot of who a caster may not hit: the trusted players who are online, resolved once so
+ * area-of-effect loops can test each nearby entity without trust lookups. Small lists are
+ * compared by reference, without hashing UUIDs; large ones fall back to a UUID hash set.
+ * Stays valid until the caster's trust changes or someone joins or quits. Obtained from
+ * {@link TrustManager#getHostileTargets(Player)}.
+ */
+public final class HostileTargets {
+    
+    // Up to this many trusted online players, a reference scan beats hashing the entity's UUID
+    private static final int SCAN_LIMIT = 16;
+    
+    private final Player caster;
+    private final Player[] trusted;
+    // Only for lists longer than SCAN_LIMIT, otherwise null
+    private final Set<UUID> trustedIds;
+    private final long trustVersion;
+    private final long onlineVersion;
+    
+    private HostileTargets(Player caster, Player[] trusted, long trustVersion, long onlineVersion) {
+        this.caster = caster;
+        this.trusted = trusted;
+        this.trustVersion = trustVersion;
+        this.onlineVersion = onlineVersion;
+        
+        if (trusted.length > SCAN_LIMIT) {
+            trustedIds = new HashSet<>();
+            for (Player player : trusted) {
+                trustedIds.add(player.getUniqueId());
+            }
+        } else {
+            trustedIds = null;
+        }
+    }
+    
+    /**
+     * Resolve the caster's trusted players that are online, walking whichever side is smaller
+     */
+    static HostileTargets build(Player caster, TrustSet trustSet, long trustVersion, long onlineVersion) {
+        List<Player> online = new ArrayList<>();
+        if (trustSet.size() < Bukkit.getOnlinePlayers().size()) {
+            for (UUID uuid : trustSet) {
+                Player player = Bukkit.getPlayer(uuid);
+                if (player != null) {
+                    online.add(player);
+                }
+            }
+        } else {
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                if (trustSet.contains(player.getUniqueId())) {
+                    online.add(player);
+                }
+            }
+        }
+        return new HostileTargets(caster, online.toArray(new Player[0]), trustVersion, onlineVersion);
+    }
+    
+    /**
+     * Check if the snapshot still applies: same caster object, no trust changes, joins or quits since.
+     * Player objects last for a whole session, so the references stay valid until then.
+     */
+    boolean isCurrent(Player caster, long trustVersion, long onlineVersion) {
+        return this.caster == caster && this.trustVersion == trustVersion && this.onlineVersion == onlineVersion;
+    }
+    
+    /**
+     * Check if an entity may be affected by the caster's abilities.
+     * The caster and players they trust are not hostile; any other entity is.
+     */
+    public boolean isHostile(Entity entity) {
+        if (entity == caster) return false;
+        if (!(entity instanceof Player)) return true;
+        if (trustedIds != null) return !trustedIds.contains(entity.getUniqueId());
+        
+        for (Player player : trusted) {
+            if (player == entity) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,289 @@
+package com.jonas.gemplugin.managers;
+
+import com.jonas.gemplugin.GemPlugin;
+import com.jonas.gemplugin.utils.NameTrie;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.permissions.Permissible;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+
+/**
+ * Local index of player names to UUIDs, learned from joins, so commands can resolve
+ * offline players without a blocking profile lookup.
+ * Persisted as an append-only log (names.log) of UUID and name records, rewritten when
+ * it holds too many stale records. Writes happen on a dedicated background thread.
+ * Lookups and updates are main thread only.
+ */
+public class PlayerNameIndex {
+    
+    private static final int MAGIC = 0x474E4931; // "GNI1"
+    // Stale records tolerated before the log is rewritten
+    private static final int COMPACT_SLACK = 256;
+    // Most names offered for tab completion
+    private static final int MAX_COMPLETIONS = 50;
+    // Needed to look up names that have never been seen on this server
+    public static final String LOOKUP_PERMISSION = "gemplugin.trust.lookup";
+    
+    private final GemPlugin plugin;
+    private final File file;
+    private final ExecutorService writer;
+    private final Map<UUID, String> names = new HashMap<>();
+    private final NameTrie<Entry> trie = new NameTrie<>();
+    // Only touched on the writer thread
+    private DataOutputStream out;
+    
+    public PlayerNameIndex(GemPlugin plugin) {
+        this.plugin = plugin;
+        this.file = new File(plugin.getDataFolder(), "names.log");
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "GemPlugin-NameIndex");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        int records = load();
+        if (records > names.size() + COMPACT_SLACK) {
+            compact();
+        }
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            update(player);
+        }
+    }
+    
+    /**
+     * Read the log; later records win. Small enough to read at startup.
+     *
+     * @return the number of records read
+     */
+    private int load() {
+        if (!file.exists()) return 0;
+        
+        int records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                plugin.getLogger().warning("Ignoring " + file.getName() + ": unrecognised format");
+                return 0;
+            }
+            
+            while (true) {
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                String name = in.readUTF();
+                put(uuid, name);
+                records++;
+            }
+        } catch (EOFException e) {
+            // End of log (or a partially written last record)
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not read " + file.getName(), e);
+        }
+        return records;
+    }
+    
+    /**
+     * Record a player's current name, e.g., on join
+     */
+    public void update(Player player) {
+        learn(player.getUniqueId(), player.getName());
+    }
+    
+    private void learn(UUID uuid, String name) {
+        if (name.equals(names.get(uuid))) return;
+        put(uuid, name);
+        
+        submit(() -> {
+            DataOutputStream stream = openForAppend();
+            stream.writeLong(uuid.getMostSignificantBits());
+            stream.writeLong(uuid.getLeastSignificantBits());
+            stream.writeUTF(name);
+            stream.flush();
+        });
+    }
+    
+    private void put(UUID uuid, String name) {
+        String previous = names.put(uuid, name);
+        if (previous != null) {
+            // Free the old name, unless someone else has taken it since
+            Entry holder = trie.get(previous);
+            if (holder != null && holder.uuid().equals(uuid)) {
+                trie.remove(previous);
+            }
+        }
+        
+        // A name now held by this player no longer belongs to whoever had it before
+        Entry displaced = trie.get(name);
+        if (displaced != null && !displaced.uuid().equals(uuid)) {
+            names.remove(displaced.uuid());
+        }
+        trie.put(name, new Entry(uuid, name));
+    }
+    
+    /**
+     * Look up a player by name (case-insensitive) in the index
+     */
+    public Entry lookup(String name) {
+        return trie.get(name);
+    }
+    
+    /**
+     * Get the last known name of a player
+     */
+    public String getName(UUID uuid) {
+        return names.get(uuid);
+    }
+    
+    /**
+     * Get known names starting with a prefix, for tab completion
+     */
+    public List<String> complete(String prefix, Predicate<Entry> filter) {
+        List<String> result = new ArrayList<>();
+        for (Entry entry : trie.complete(prefix, MAX_COMPLETIONS, filter)) {
+            result.add(entry.name());
+        }
+        return result;
+    }
+    
+    /**
+     * Resolve a name to a player without blocking the main thread. Exact matches from online
+     * players, the index and the server's profile cache win, then online players whose name
+     * starts with it (as Bukkit.getPlayer does). Anything else is looked up in the background,
+     * but only for requesters with {@link #LOOKUP_PERMISSION}, since that may query the session servers.
+     * The callback runs on the main thread, with null if no such player has played here.
+     */
+    public void resolve(Permissible requester, String name, Consumer<Entry> callback) {
+        Player online = Bukkit.getPlayerExact(name);
+        if (online != null) {
+            callback.accept(new Entry(online.getUniqueId(), online.getName()));
+            return;
+        }
+        
+        Entry known = lookup(name);
+        if (known != null) {
+            callback.accept(known);
+            return;
+        }
+        
+        OfflinePlayer cached = Bukkit.getOfflinePlayerIfCached(name);
+        if (cached != null) {
+            String cachedName = cached.getName() != null ? cached.getName() : name;
+            learn(cached.getUniqueId(), cachedName);
+            callback.accept(new Entry(cached.getUniqueId(), cachedName));
+            return;
+        }
+        
+        Player partial = Bukkit.getPlayer(name);
+        if (partial != null) {
+            callback.accept(new Entry(partial.getUniqueId(), partial.getName()));
+            return;
+        }
+        
+        if (!requester.hasPermission(LOOKUP_PERMISSION)) {
+            callback.accept(null);
+            return;
+        }
+        
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            // May query the session servers
+            @SuppressWarnings("deprecation")
+            OfflinePlayer offline = Bukkit.getOfflinePlayer(name);
+            boolean found = offline.hasPlayedBefore() || offline.isOnline();
+            String resolvedName = offline.getName() != null ? offline.getName() : name;
+            if (!plugin.isEnabled()) return;
+            
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                if (!found) {
+                    callback.accept(null);
+                    return;
+                }
+                learn(offline.getUniqueId(), resolvedName);
+                callback.accept(new Entry(offline.getUniqueId(), resolvedName));
+            });
+        });
+    }
+    
+    /**
+     * Queue a rewrite of the log containing only the current names
+     */
+    private void compact() {
+        Map<UUID, String> snapshot = new HashMap<>(names);
+        submit(() -> {
+            closeStream();
+            
+            File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+            try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                stream.writeInt(MAGIC);
+                for (Map.Entry<UUID, String> entry : snapshot.entrySet()) {
+                    stream.writeLong(entry.getKey().getMostSignificantBits());
+                    stream.writeLong(entry.getKey().getLeastSignificantBits());
+                    stream.writeUTF(entry.getValue());
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        });
+    }
+    
+    /**
+     * Finish all queued writes and close the log
+     */
+    public void close() {
+        submit(this::closeStream);
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Timed out flushing " + file.getName());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private DataOutputStream openForAppend() throws IOException {
+        if (out == null) {
+            file.getParentFile().mkdirs();
+            boolean fresh = !file.exists() || file.length() == 0;
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            if (fresh) {
+                out.writeInt(MAGIC);
+            }
+        }
+        return out;
+    }
+    
+    private void closeStream() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+    
+    private void submit(IOTask task) {
+        writer.execute(() -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Could not write " + file.getName(), e);
+            }
+        });
+    }
+    
+    @FunctionalInterface
+    private interface IOTask {
+        void run() throws IOException;
+    }
+    
+    /**
+     * A player's UUID with their last known name
+     */
+    public record Entry(UUID uuid, String name) {
+    }
+}
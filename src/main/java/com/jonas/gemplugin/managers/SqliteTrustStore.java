@@ -0,0 +1,284 @@
+package com.jonas.gemplugin.managers;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Trust storage on an embedded SQLite database (trusts.db), one indexed row per relationship.
+ * SQLite serialises writers anyway, so a single connection confined to one dedicated thread
+ * serves as the pool; queued changes are written in batches inside one transaction.
+ * Uses the SQLite driver bundled with the server.
+ */
+public class SqliteTrustStore implements TrustStorage {
+    
+    private final File databaseFile;
+    private final Logger logger;
+    private final ExecutorService executor;
+    private final Queue<Change> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    // Only touched on the executor thread
+    private Connection connection;
+    // Whether the schema was already there when the database was opened
+    private volatile boolean initialised;
+    
+    /**
+     * @throws SQLException if the database cannot be opened
+     */
+    public SqliteTrustStore(File dataFolder, Logger logger) throws SQLException {
+        this.databaseFile = new File(dataFolder, "trusts.db");
+        this.logger = logger;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "GemPlugin-TrustDB");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        try {
+            call(this::open);
+        } catch (SQLException e) {
+            executor.shutdownNow();
+            throw e;
+        }
+    }
+    
+    private Void open() throws SQLException {
+        databaseFile.getParentFile().mkdirs();
+        connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("PRAGMA synchronous=NORMAL");
+            try (ResultSet result = statement.executeQuery(
+                    "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'trusts'")) {
+                initialised = result.next();
+            }
+            // The primary key is the index: lookups by truster and single-row updates are O(log n)
+            statement.execute("CREATE TABLE IF NOT EXISTS trusts ("
+                    + "truster BLOB NOT NULL, "
+                    + "trusted BLOB NOT NULL, "
+                    + "PRIMARY KEY (truster, trusted)) WITHOUT ROWID");
+            // Read the table once, so a database that cannot be queried fails here, where the caller
+            // can still fall back to another storage, instead of looking empty later
+            statement.executeQuery("SELECT 1 FROM trusts LIMIT 1").close();
+        }
+        return null;
+    }
+    
+    /**
+     * Decided by the schema rather than the rows, so a database whose last trust was removed
+     * still counts as set up
+     */
+    @Override
+    public boolean exists() {
+        return initialised;
+    }
+    
+    @Override
+    public Set<UUID> load(UUID truster) {
+        try {
+            return call(() -> {
+                // Make sure changes still waiting in the queue are visible
+                flush();
+                
+                Set<UUID> trusted = new HashSet<>();
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "SELECT trusted FROM trusts WHERE truster = ?")) {
+                    statement.setBytes(1, toBytes(truster));
+                    try (ResultSet result = statement.executeQuery()) {
+                        while (result.next()) {
+                            trusted.add(fromBytes(result.getBytes(1)));
+                        }
+                    }
+                }
+                return trusted;
+            });
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Could not load trusts for " + truster, e);
+            return new HashSet<>();
+        }
+    }
+    
+    @Override
+    public Map<UUID, Set<UUID>> loadAll() {
+        try {
+            return call(() -> {
+                flush();
+                
+                Map<UUID, Set<UUID>> trusts = new HashMap<>();
+                try (Statement statement = connection.createStatement();
+                     ResultSet result = statement.executeQuery("SELECT truster, trusted FROM trusts")) {
+                    while (result.next()) {
+                        trusts.computeIfAbsent(fromBytes(result.getBytes(1)), k -> new HashSet<>())
+                                .add(fromBytes(result.getBytes(2)));
+                    }
+                }
+                return trusts;
+            });
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Could not read trusts.db", e);
+            return new HashMap<>();
+        }
+    }
+    
+    @Override
+    public void add(UUID truster, UUID trusted) {
+        queue(new Change(true, truster, trusted));
+    }
+    
+    @Override
+    public void remove(UUID truster, UUID trusted) {
+        queue(new Change(false, truster, trusted));
+    }
+    
+    private void queue(Change change) {
+        pending.add(change);
+        // Changes queued while a flush is waiting to run are picked up by that flush
+        if (flushQueued.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                try {
+                    flush();
+                } catch (SQLException e) {
+                    logger.log(Level.WARNING, "Could not write trust changes", e);
+                }
+            });
+        }
+    }
+    
+    /**
+     * Write all queued changes in one transaction. Runs on the executor thread.
+     */
+    private void flush() throws SQLException {
+        flushQueued.set(false);
+        if (pending.isEmpty()) return;
+        
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT OR IGNORE INTO trusts (truster, trusted) VALUES (?, ?)");
+             PreparedStatement delete = connection.prepareStatement(
+                     "DELETE FROM trusts WHERE truster = ? AND trusted = ?")) {
+            // Batch runs of the same kind of change; switching kinds flushes the batch,
+            // which keeps queue order so an add followed by a remove ends up removed
+            PreparedStatement batch = null;
+            Change change;
+            while ((change = pending.poll()) != null) {
+                PreparedStatement statement = change.add() ? insert : delete;
+                if (batch != null && batch != statement) {
+                    batch.executeBatch();
+                }
+                batch = statement;
+                statement.setBytes(1, toBytes(change.truster()));
+                statement.setBytes(2, toBytes(change.trusted()));
+                statement.addBatch();
+            }
+            if (batch != null) {
+                batch.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+    
+    @Override
+    public boolean importAll(Map<UUID, ? extends Collection<UUID>> trusts) {
+        try {
+            return call(() -> {
+                connection.setAutoCommit(false);
+                try (Statement clear = connection.createStatement();
+                     PreparedStatement insert = connection.prepareStatement(
+                             "INSERT OR IGNORE INTO trusts (truster, trusted) VALUES (?, ?)")) {
+                    clear.execute("DELETE FROM trusts");
+                    for (Map.Entry<UUID, ? extends Collection<UUID>> entry : trusts.entrySet()) {
+                        byte[] truster = toBytes(entry.getKey());
+                        for (UUID trusted : entry.getValue()) {
+                            insert.setBytes(1, truster);
+                            insert.setBytes(2, toBytes(trusted));
+                            insert.addBatch();
+                        }
+                    }
+                    insert.executeBatch();
+                    connection.commit();
+                    initialised = true;
+                    return true;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            });
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Could not import trusts into trusts.db", e);
+            return false;
+        }
+    }
+    
+    @Override
+    public void close() {
+        executor.execute(() -> {
+            try {
+                flush();
+                connection.close();
+            } catch (SQLException e) {
+                logger.log(Level.WARNING, "Could not close trusts.db", e);
+            }
+        });
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warning("Timed out flushing trusts.db");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Run a task on the database thread and wait for its result
+     */
+    private <T> T call(SqlTask<T> task) throws SQLException {
+        try {
+            return executor.submit(task::run).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException(e.getCause());
+        }
+    }
+    
+    private static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+    
+    private static UUID fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+    
+    @FunctionalInterface
+    private interface SqlTask<T> {
+        T run() throws SQLException;
+    }
+    
+    private record Change(boolean add, UUID truster, UUID trusted) {
+    }
+}
@@ -1,46 +1,118 @@
 package com.jonas.gemplugin.managers;
 
 import com.jonas.gemplugin.GemPlugin;
+import org.bukkit.Bukkit;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Manages the trust system between players
+ * Manages the trust system between players.
+ * Only online players' trust sets are kept in memory; the rest stays in the configured storage.
+ * Sets are prefetched during login and kept for a while after a player quits, so quick
+ * reconnects do not touch the storage at all.
  */
 public class TrustManager {
     
+    private static final String BINARY = "binary";
+    private static final String SQLITE = "sqlite";
+    // Recently-offline players whose trust sets stay cached
+    private static final int RECENT_CAPACITY = 1024;
+    private static final long RECENT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    // Prefetches not claimed by a join within this time (e.g., the login was denied later) are dropped
+    private static final long PREFETCH_TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long SWEEP_INTERVAL_TICKS = 1200L;
+    
     private final GemPlugin plugin;
-    private final File trustFile;
-    private FileConfiguration trustConfig;
-    private final Map<UUID, Set<UUID>> trustMap;
+    private final File legacyFile;
+    // Trust sets of online players
+    private final Map<UUID, TrustSet> trustMap;
+    // Trust sets of players who quit recently, least recently used first
+    private final LinkedHashMap<UUID, CachedTrusts> recent;
+    // Trust sets loaded during login, waiting for the join; written from async login threads
+    private final Map<UUID, CachedTrusts> prefetched;
+    // Players whose sets are being loaded in the background, with the removals made meanwhile
+    private final Map<UUID, Set<UUID>> loading;
+    // Per-caster snapshots for area-of-effect checks
+    private final Map<UUID, HostileTargets> hostileTargets;
+    // Bumped whenever a resident trust set changes, invalidating the snapshots
+    private long trustVersion;
+    // Bumped on every join and quit, since snapshots only hold online players
+    private long onlineVersion;
+    private final TrustStorage storage;
     
     public TrustManager(GemPlugin plugin) {
         this.plugin = plugin;
-        this.trustFile = new File(plugin.getDataFolder(), "trusts.yml");
+        this.legacyFile = new File(plugin.getDataFolder(), "trusts.yml");
         this.trustMap = new HashMap<>();
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, CachedTrusts> eldest) {
+                return size() > RECENT_CAPACITY;
+            }
+        };
+        this.prefetched = new ConcurrentHashMap<>();
+        this.loading = new HashMap<>();
+        this.hostileTargets = new HashMap<>();
+        this.storage = openStorage(plugin.getConfigManager().getTrustStorage());
         loadTrusts();
+        
+        Bukkit.getScheduler().runTaskTimer(plugin, this::sweep, SWEEP_INTERVAL_TICKS, SWEEP_INTERVAL_TICKS);
     }
     
     /**
-     * Load trust data from file
+     * Open the configured storage, falling back to the binary store if the database cannot be opened
      */
-    public void loadTrusts() {
-        if (!trustFile.exists()) {
+    private TrustStorage openStorage(String type) {
+        if (SQLITE.equals(type)) {
             try {
-                trustFile.getParentFile().mkdirs();
-                trustFile.createNewFile();
-            } catch (IOException e) {
-                plugin.getLogger().severe("Could not create trusts.yml: " + e.getMessage());
+                return new SqliteTrustStore(plugin.getDataFolder(), plugin.getLogger());
+            } catch (SQLException e) {
+                plugin.getLogger().severe("Could not open trusts.db, using binary trust storage: " + e.getMessage());
+            }
+        } else if (!BINARY.equals(type)) {
+            plugin.getLogger().warning("Unknown trust-storage '" + type + "', using binary");
+        }
+        return new BinaryTrustStore(plugin.getDataFolder(), plugin.getLogger());
+    }
+    
+    /**
+     * Carry over existing data the first time a storage is used, then load online players
+     */
+    public void loadTrusts() {
+        if (!storage.exists()) {
+            if (legacyFile.exists()) {
+                importLegacyTrusts();
+            } else {
+                importFromOtherStorage();
             }
         }
         
-        trustConfig = YamlConfiguration.loadConfiguration(trustFile);
         trustMap.clear();
+        loading.clear();
+        hostileTargets.clear();
+        recent.clear();
+        prefetched.clear();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            loadPlayer(player);
+        }
+    }
+    
+    /**
+     * One-time import from the old YAML file, which is renamed afterwards so it is not read again
+     */
+    private void importLegacyTrusts() {
+        FileConfiguration trustConfig = YamlConfiguration.loadConfiguration(legacyFile);
+        Map<UUID, Set<UUID>> legacy = new HashMap<>();
         
         for (String key : trustConfig.getKeys(false)) {
             try {
@@ -56,57 +128,218 @@ public class TrustManager {
                     }
                 }
                 
-                trustMap.put(playerUUID, trusted);
+                legacy.put(playerUUID, trusted);
             } catch (IllegalArgumentException e) {
                 // Skip invalid UUIDs
             }
         }
+        
+        if (storage.importAll(legacy)) {
+            retire(legacyFile);
+            plugin.getLogger().info("Imported trusts for " + legacy.size() + " players from trusts.yml");
+        }
     }
     
     /**
-     * Save trust data to file
+     * Copy data over when switching trust-storage. The previous storage's files are renamed
+     * afterwards, so switching back later starts from the current data instead of a stale copy.
      */
-    public void saveTrusts() {
-        trustConfig = new YamlConfiguration();
-        
-        for (Map.Entry<UUID, Set<UUID>> entry : trustMap.entrySet()) {
-            List<String> trustedList = new ArrayList<>();
-            for (UUID trusted : entry.getValue()) {
-                trustedList.add(trusted.toString());
+    private void importFromOtherStorage() {
+        File dataFolder = plugin.getDataFolder();
+        TrustStorage previous = null;
+        File[] previousFiles;
+        if (storage instanceof SqliteTrustStore) {
+            previousFiles = new File[] {new File(dataFolder, "trusts.bin"), new File(dataFolder, "trusts.log")};
+        } else {
+            previousFiles = new File[] {new File(dataFolder, "trusts.db"),
+                    new File(dataFolder, "trusts.db-wal"), new File(dataFolder, "trusts.db-shm")};
+        }
+        try {
+            if (storage instanceof SqliteTrustStore) {
+                if (previousFiles[0].exists() || previousFiles[1].exists()) {
+                    previous = new BinaryTrustStore(dataFolder, plugin.getLogger());
+                }
+            } else if (previousFiles[0].exists()) {
+                previous = new SqliteTrustStore(dataFolder, plugin.getLogger());
             }
-            trustConfig.set(entry.getKey().toString(), trustedList);
+        } catch (SQLException e) {
+            plugin.getLogger().warning("Could not open previous trust storage: " + e.getMessage());
         }
+        if (previous == null) return;
         
-        try {
-            trustConfig.save(trustFile);
-        } catch (IOException e) {
-            plugin.getLogger().severe("Could not save trusts.yml: " + e.getMessage());
+        Map<UUID, Set<UUID>> trusts = previous.loadAll();
+        previous.close();
+        if (storage.importAll(trusts)) {
+            retire(previousFiles);
+            plugin.getLogger().info("Copied trusts for " + trusts.size() + " players from the previous trust storage");
         }
     }
     
     /**
-     * Add a trusted player
+     * Rename imported files with a .migrated suffix, so they are not imported again
+     */
+    private void retire(File... files) {
+        for (File file : files) {
+            if (!file.exists()) continue;
+            
+            File migrated = new File(file.getParentFile(), file.getName() + ".migrated");
+            try {
+                Files.move(file.toPath(), migrated.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                plugin.getLogger().warning("Could not rename " + file.getName() + " after importing it: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Load a player's trust set ahead of their join. Blocking; called from the async login thread.
+     */
+    public void prefetch(UUID playerUUID) {
+        prefetched.put(playerUUID, new CachedTrusts(TrustSet.of(storage.load(playerUUID)), System.currentTimeMillis()));
+    }
+    
+    /**
+     * Make a joining player's trust set resident, from the cache if possible, otherwise by
+     * loading it in the background
      */
-    public void addTrust(Player player, Player trusted) {
+    public void loadPlayer(Player player) {
         UUID playerUUID = player.getUniqueId();
-        UUID trustedUUID = trusted.getUniqueId();
+        onlineVersion++;
+        if (trustMap.containsKey(playerUUID)) {
+            prefetched.remove(playerUUID);
+            return;
+        }
+        
+        // A recently-offline set is at least as new as a prefetch: nobody else changes it
+        CachedTrusts cached = recent.remove(playerUUID);
+        CachedTrusts fetched = prefetched.remove(playerUUID);
+        if (cached == null) {
+            cached = fetched;
+        }
+        if (cached != null) {
+            trustMap.put(playerUUID, cached.trusted());
+            trustVersion++;
+            return;
+        }
+        
+        loading.put(playerUUID, new HashSet<>());
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            TrustSet loaded = TrustSet.of(storage.load(playerUUID));
+            if (!plugin.isEnabled()) return;
+            
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                // Gone if the player quit, the trusts were reloaded or a lookup already loaded it
+                if (Bukkit.getPlayer(playerUUID) == null) return;
+                finishLoad(playerUUID, loaded);
+            });
+        });
+    }
+    
+    /**
+     * Merge a loaded trust set with the changes made while it was loading
+     */
+    private void finishLoad(UUID playerUUID, TrustSet loaded) {
+        Set<UUID> removed = loading.remove(playerUUID);
+        if (removed == null) return;
         
-        trustMap.computeIfAbsent(playerUUID, k -> new HashSet<>());
-        trustMap.get(playerUUID).add(trustedUUID);
+        // Keep anything trusted while the load was in flight, and drop anything untrusted,
+        // which the loaded copy may still contain
+        TrustSet current = trustMap.get(playerUUID);
+        TrustSet merged = current != null ? loaded.union(current) : loaded;
+        for (UUID uuid : removed) {
+            merged = merged.without(uuid);
+        }
+        trustMap.put(playerUUID, merged);
+        trustVersion++;
+    }
+    
+    /**
+     * Get a player's resident trust set. If it is still loading in the background, load it
+     * right away instead, so allies are never treated as targets in the meantime. That only
+     * happens when the login prefetch was missed, and costs one indexed read.
+     */
+    private TrustSet resident(UUID playerUUID) {
+        if (loading.containsKey(playerUUID)) {
+            finishLoad(playerUUID, TrustSet.of(storage.load(playerUUID)));
+        }
+        return trustMap.getOrDefault(playerUUID, TrustSet.EMPTY);
+    }
+    
+    /**
+     * Move a player's trust set out of the online map; it stays cached for a while in case
+     * they reconnect, and in storage for good
+     */
+    public void unloadPlayer(Player player) {
+        UUID playerUUID = player.getUniqueId();
+        onlineVersion++;
+        hostileTargets.remove(playerUUID);
+        TrustSet trusted = trustMap.remove(playerUUID);
+        // A set still loading only holds this session's changes, which storage already has
+        boolean partial = loading.remove(playerUUID) != null;
+        if (trusted != null && !partial) {
+            recent.put(playerUUID, new CachedTrusts(trusted, System.currentTimeMillis()));
+        }
+    }
+    
+    /**
+     * Evict cached sets of players who have been offline too long, and unclaimed prefetches
+     */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        recent.values().removeIf(cached -> now - cached.since() > RECENT_TTL_MILLIS);
+        prefetched.values().removeIf(cached -> now - cached.since() > PREFETCH_TTL_MILLIS);
+    }
+    
+    /**
+     * Finish writing outstanding changes and close the storage. Called on disable.
+     */
+    public void saveTrusts() {
+        storage.close();
+    }
+    
+    /**
+     * Add a trusted player, who may be offline
+     */
+    public void addTrust(Player player, UUID trustedUUID) {
+        UUID playerUUID = player.getUniqueId();
+        Set<UUID> removed = loading.get(playerUUID);
+        if (removed != null) {
+            removed.remove(trustedUUID);
+        }
         
-        saveTrusts();
+        // Sets are immutable: swap in the updated copy
+        TrustSet current = trustMap.getOrDefault(playerUUID, TrustSet.EMPTY);
+        TrustSet updated = current.with(trustedUUID);
+        if (updated != current) {
+            trustMap.put(playerUUID, updated);
+            trustVersion++;
+            storage.add(playerUUID, trustedUUID);
+        }
     }
     
     /**
-     * Remove a trusted player
+     * Remove a trusted player, who may be offline
      */
-    public void removeTrust(Player player, Player trusted) {
+    public void removeTrust(Player player, UUID trustedUUID) {
         UUID playerUUID = player.getUniqueId();
-        UUID trustedUUID = trusted.getUniqueId();
+        Set<UUID> removed = loading.get(playerUUID);
+        if (removed != null) {
+            // The set being loaded may still contain the player; drop it again once it arrives
+            removed.add(trustedUUID);
+        }
         
-        if (trustMap.containsKey(playerUUID)) {
-            trustMap.get(playerUUID).remove(trustedUUID);
-            saveTrusts();
+        // Removes are idempotent, so pass them on even if the set is still loading
+        TrustSet current = trustMap.get(playerUUID);
+        if (current == null) {
+            storage.remove(playerUUID, trustedUUID);
+            return;
+        }
+        
+        TrustSet updated = current.without(trustedUUID);
+        if (updated != current) {
+            trustMap.put(playerUUID, updated);
+            trustVersion++;
+            storage.remove(playerUUID, trustedUUID);
         }
     }
     
@@ -114,18 +347,36 @@ public class TrustManager {
      * Check if a player trusts another player
      */
     public boolean isTrusted(Player player, Player other) {
-        UUID playerUUID = player.getUniqueId();
-        UUID otherUUID = other.getUniqueId();
+        return resident(player.getUniqueId()).contains(other.getUniqueId());
+    }
+    
+    /**
+     * Get who a caster's abilities may affect. The snapshot is kept across ability passes and
+     * only rebuilt after a trust change or a join or quit, so area-of-effect loops can check
+     * every nearby entity without trust lookups.
+     */
+    public HostileTargets getHostileTargets(Player caster) {
+        HostileTargets cached = hostileTargets.get(caster.getUniqueId());
+        if (cached != null && cached.isCurrent(caster, trustVersion, onlineVersion)) {
+            return cached;
+        }
         
-        if (!trustMap.containsKey(playerUUID)) return false;
-        return trustMap.get(playerUUID).contains(otherUUID);
+        TrustSet trusted = resident(caster.getUniqueId());
+        cached = HostileTargets.build(caster, trusted, trustVersion, onlineVersion);
+        hostileTargets.put(caster.getUniqueId(), cached);
+        return cached;
     }
     
     /**
-     * Get all trusted players for a player
+     * Get all trusted players for a player, as an immutable snapshot
      */
     public Set<UUID> getTrustedPlayers(Player player) {
-        UUID playerUUID = player.getUniqueId();
-        return trustMap.getOrDefault(playerUUID, new HashSet<>());
+        return resident(player.getUniqueId());
+    }
+    
+    /**
+     * A trust set held outside the online map, with the time it was put there
+     */
+    private record CachedTrusts(TrustSet trusted, long since) {
     }
 }
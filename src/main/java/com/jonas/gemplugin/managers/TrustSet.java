@@ -0,0 +1,152 @@
+package com.jonas.gemplugin.managers;
+
+import java.util.*;
+
+/**
+ * Immutable set of trusted players, stored as one sorted long[] of (msb, lsb) pairs.
+ * Uses 16 bytes per player instead of a hash node plus a UUID object, and lookups are a
+ * binary search over a single array. Updates copy the array, which is cheap at trust-list sizes.
+ */
+public final class TrustSet extends AbstractSet<UUID> {
+    
+    public static final TrustSet EMPTY = new TrustSet(new long[0]);
+    
+    // Pair i is at [2i] (msb) and [2i + 1] (lsb), sorted by msb then lsb
+    private final long[] bits;
+    
+    private TrustSet(long[] bits) {
+        this.bits = bits;
+    }
+    
+    /**
+     * Build a set from any collection of UUIDs
+     */
+    public static TrustSet of(Collection<UUID> uuids) {
+        if (uuids instanceof TrustSet) return (TrustSet) uuids;
+        if (uuids.isEmpty()) return EMPTY;
+        
+        UUID[] sorted = uuids.toArray(new UUID[0]);
+        Arrays.sort(sorted, TrustSet::compare);
+        long[] bits = new long[sorted.length * 2];
+        int count = 0;
+        for (UUID uuid : sorted) {
+            if (count > 0 && bits[count * 2 - 2] == uuid.getMostSignificantBits()
+                    && bits[count * 2 - 1] == uuid.getLeastSignificantBits()) {
+                continue;
+            }
+            bits[count * 2] = uuid.getMostSignificantBits();
+            bits[count * 2 + 1] = uuid.getLeastSignificantBits();
+            count++;
+        }
+        return new TrustSet(count * 2 == bits.length ? bits : Arrays.copyOf(bits, count * 2));
+    }
+    
+    @Override
+    public int size() {
+        return bits.length / 2;
+    }
+    
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof UUID && indexOf((UUID) o) >= 0;
+    }
+    
+    /**
+     * Get a set that also contains a player
+     *
+     * @return this set if the player is already in it
+     */
+    public TrustSet with(UUID uuid) {
+        int index = indexOf(uuid);
+        if (index >= 0) return this;
+        
+        int insert = (-index - 1) * 2;
+        long[] updated = new long[bits.length + 2];
+        System.arraycopy(bits, 0, updated, 0, insert);
+        updated[insert] = uuid.getMostSignificantBits();
+        updated[insert + 1] = uuid.getLeastSignificantBits();
+        System.arraycopy(bits, insert, updated, insert + 2, bits.length - insert);
+        return new TrustSet(updated);
+    }
+    
+    /**
+     * Get a set without a player
+     *
+     * @return this set if the player is not in it
+     */
+    public TrustSet without(UUID uuid) {
+        int index = indexOf(uuid);
+        if (index < 0) return this;
+        if (bits.length == 2) return EMPTY;
+        
+        int remove = index * 2;
+        long[] updated = new long[bits.length - 2];
+        System.arraycopy(bits, 0, updated, 0, remove);
+        System.arraycopy(bits, remove + 2, updated, remove, bits.length - remove - 2);
+        return new TrustSet(updated);
+    }
+    
+    /**
+     * Get a set containing the players of both sets
+     */
+    public TrustSet union(Collection<UUID> other) {
+        if (other.isEmpty()) return this;
+        if (isEmpty()) return of(other);
+        
+        List<UUID> merged = new ArrayList<>(this);
+        merged.addAll(other);
+        return of(merged);
+    }
+    
+    @Override
+    public Iterator<UUID> iterator() {
+        return new Iterator<>() {
+            private int next;
+            
+            @Override
+            public boolean hasNext() {
+                return next < bits.length;
+            }
+            
+            @Override
+            public UUID next() {
+                if (next >= bits.length) throw new NoSuchElementException();
+                UUID uuid = new UUID(bits[next], bits[next + 1]);
+                next += 2;
+                return uuid;
+            }
+        };
+    }
+    
+    /**
+     * Binary search for a player
+     *
+     * @return the pair index, or (-(insertion point) - 1) if absent
+     */
+    private int indexOf(UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int low = 0;
+        int high = bits.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int result = Long.compare(bits[mid * 2], msb);
+            if (result == 0) {
+                result = Long.compare(bits[mid * 2 + 1], lsb);
+            }
+            if (result < 0) {
+                low = mid + 1;
+            } else if (result > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+    
+    private static int compare(UUID a, UUID b) {
+        int result = Long.compare(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return result != 0 ? result : Long.compare(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+}
@@ -0,0 +1,53 @@
+package com.jonas.gemplugin.managers;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Persistent storage for trust relationships.
+ * Reads are per player and may block; writes are queued and persisted in the background.
+ */
+public interface TrustStorage {
+    
+    /**
+     * Check if the storage had already been set up, even if it is empty now
+     * (used to decide on a one-time import)
+     */
+    boolean exists();
+    
+    /**
+     * Load the players trusted by a player. Blocking; call off the main thread.
+     *
+     * @return a new mutable set, empty if the player trusts nobody
+     */
+    Set<UUID> load(UUID truster);
+    
+    /**
+     * Load every relationship, for moving data to another storage. Blocking.
+     */
+    Map<UUID, Set<UUID>> loadAll();
+    
+    /**
+     * Queue a trust being added
+     */
+    void add(UUID truster, UUID trusted);
+    
+    /**
+     * Queue a trust being removed
+     */
+    void remove(UUID truster, UUID trusted);
+    
+    /**
+     * Replace all stored data right away, e.g., when importing from another format
+     *
+     * @return true if the data was written
+     */
+    boolean importAll(Map<UUID, ? extends Collection<UUID>> trusts);
+    
+    /**
+     * Finish all queued writes and release the storage
+     */
+    void close();
+}
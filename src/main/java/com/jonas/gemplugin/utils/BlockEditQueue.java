@@ -0,0 +1,182 @@
+package com.jonas.gemplugin.utils;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.*;
+
+/**
+ * Spreads large block edits over several ticks. Edits are grouped into batches by chunk
+ * section and applied in submission order until the tick's time budget is spent.
+ * Batches in unloaded chunks wait for an asynchronous chunk load instead of loading it
+ * on the main thread.
+ * Not thread-safe; use from the main thread only.
+ */
+public class BlockEditQueue {
+    
+    private final Deque<Batch> batches = new ArrayDeque<>();
+    
+    /**
+     * Queue edits that replace blocks of one type with another. Blocks that are no longer of the
+     * expected type when their turn comes are left alone.
+     *
+     * @param keys packed block positions (see {@link BlockKey}); the first count are used
+     * @param physics whether to update neighbours; placing into air can safely skip this
+     * @param listener told about each block once its turn has come
+     * @return a handle to cancel the edits that have not been applied yet
+     */
+    public Job submit(World world, long[] keys, int count, Material expected, Material replacement,
+                      boolean physics, EditListener listener) {
+        Job job = new Job(world, expected, replacement, physics, listener);
+        
+        // Group by chunk section, keeping the order in which sections first appear
+        Map<Long, LongList> sections = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            long key = keys[i];
+            long section = BlockKey.pack(BlockKey.x(key) >> 4, BlockKey.y(key) >> 4, BlockKey.z(key) >> 4);
+            sections.computeIfAbsent(section, k -> new LongList()).add(key);
+        }
+        for (LongList section : sections.values()) {
+            batches.addLast(new Batch(job, section.values, section.size));
+        }
+        return job;
+    }
+    
+    /**
+     * Check if edits are waiting to be applied
+     */
+    public boolean isEmpty() {
+        return batches.isEmpty();
+    }
+    
+    /**
+     * Apply queued edits until the budget is spent. Always makes some progress.
+     */
+    public void tick(long budgetMicros) {
+        long deadline = System.nanoTime() + budgetMicros * 1000L;
+        int waiting = 0;
+        
+        while (!batches.isEmpty() && waiting < batches.size()) {
+            Batch batch = batches.peekFirst();
+            if (batch.job.cancelled) {
+                batches.pollFirst();
+                continue;
+            }
+            
+            World world = batch.job.world;
+            int chunkX = BlockKey.x(batch.keys[0]) >> 4;
+            int chunkZ = BlockKey.z(batch.keys[0]) >> 4;
+            if (!world.isChunkLoaded(chunkX, chunkZ)) {
+                // Move on and pick the batch up again once its chunk has loaded
+                batches.pollFirst();
+                if (!batch.loading) {
+                    batch.loading = true;
+                    world.getChunkAtAsync(chunkX, chunkZ).thenRun(() -> batch.loading = false);
+                }
+                batches.addLast(batch);
+                waiting++;
+                continue;
+            }
+            waiting = 0;
+            
+            while (batch.next < batch.size) {
+                apply(batch, batch.keys[batch.next++]);
+                if (System.nanoTime() >= deadline) {
+                    if (batch.next == batch.size) {
+                        batches.pollFirst();
+                    }
+                    return;
+                }
+            }
+            batches.pollFirst();
+        }
+    }
+    
+    /**
+     * Apply everything still queued right away, loading chunks as needed. Used on disable.
+     */
+    public void flush() {
+        Batch batch;
+        while ((batch = batches.pollFirst()) != null) {
+            if (batch.job.cancelled) continue;
+            while (batch.next < batch.size) {
+                apply(batch, batch.keys[batch.next++]);
+            }
+        }
+    }
+    
+    private void apply(Batch batch, long key) {
+        Job job = batch.job;
+        int x = BlockKey.x(key);
+        int y = BlockKey.y(key);
+        int z = BlockKey.z(key);
+        if (job.world.getType(x, y, z) != job.expected) {
+            job.listener.edited(key, false);
+            return;
+        }
+        
+        job.world.getBlockAt(x, y, z).setType(job.replacement, job.physics);
+        job.listener.edited(key, true);
+    }
+    
+    @FunctionalInterface
+    public interface EditListener {
+        /**
+         * @param applied false if the block was no longer of the expected type and was left alone
+         */
+        void edited(long key, boolean applied);
+    }
+    
+    /**
+     * Handle to a submitted set of edits
+     */
+    public static final class Job {
+        private final World world;
+        private final Material expected;
+        private final Material replacement;
+        private final boolean physics;
+        private final EditListener listener;
+        private boolean cancelled;
+        
+        private Job(World world, Material expected, Material replacement, boolean physics, EditListener listener) {
+            this.world = world;
+            this.expected = expected;
+            this.replacement = replacement;
+            this.physics = physics;
+            this.listener = listener;
+        }
+        
+        /**
+         * Drop the edits that have not been applied yet
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+    
+    private static final class Batch {
+        private final Job job;
+        private final long[] keys;
+        private final int size;
+        private int next;
+        private boolean loading;
+        
+        private Batch(Job job, long[] keys, int size) {
+            this.job = job;
+            this.keys = keys;
+            this.size = size;
+        }
+    }
+    
+    private static final class LongList {
+        private long[] values = new long[16];
+        private int size;
+        
+        private void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.jonas.gemplugin.utils;
+
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Per-world set of packed block positions with a chunk-level presence filter in front,
+ * so checks for blocks far from any indexed block cost one primitive probe and no allocation.
+ * Not thread-safe; use from the main thread only.
+ */
+public class BlockIndex {
+    
+    private final Map<UUID, WorldBlocks> worlds = new HashMap<>();
+    
+    /**
+     * Add a block given by its packed key
+     */
+    public void add(World world, long key) {
+        WorldBlocks blocks = worlds.computeIfAbsent(world.getUID(), k -> new WorldBlocks());
+        blocks.blocks.add(key);
+        blocks.chunks.add(BlockKey.chunkOf(key));
+    }
+    
+    /**
+     * Remove a single block. The chunk filter is left as is: it may keep a chunk that no longer
+     * holds blocks, which only costs a second probe, until the next {@link #removeAll} or the world empties.
+     */
+    public void remove(World world, long key) {
+        WorldBlocks blocks = worlds.get(world.getUID());
+        if (blocks == null) return;
+        
+        blocks.blocks.remove(key);
+        if (blocks.blocks.isEmpty()) {
+            worlds.remove(world.getUID());
+        }
+    }
+    
+    /**
+     * Remove blocks given by their packed keys and shrink the chunk filter to the blocks left
+     */
+    public void removeAll(World world, long[] keys) {
+        WorldBlocks blocks = worlds.get(world.getUID());
+        if (blocks == null) return;
+        
+        for (long key : keys) {
+            blocks.blocks.remove(key);
+        }
+        if (blocks.blocks.isEmpty()) {
+            worlds.remove(world.getUID());
+            return;
+        }
+        
+        // Removals are rare next to lookups, so rebuild the filter rather than count per chunk
+        blocks.chunks.clear();
+        blocks.blocks.forEach(key -> blocks.chunks.add(BlockKey.chunkOf(key)));
+    }
+    
+    public boolean contains(Block block) {
+        return contains(block.getWorld(), block.getX(), block.getY(), block.getZ());
+    }
+    
+    public boolean contains(World world, int x, int y, int z) {
+        if (worlds.isEmpty()) return false;
+        
+        WorldBlocks blocks = worlds.get(world.getUID());
+        return blocks != null
+                && blocks.chunks.contains(BlockKey.chunk(x >> 4, z >> 4))
+                && blocks.blocks.contains(BlockKey.pack(x, y, z));
+    }
+    
+    /**
+     * Check for a block given by its packed key
+     */
+    public boolean contains(World world, long key) {
+        if (worlds.isEmpty()) return false;
+        
+        WorldBlocks blocks = worlds.get(world.getUID());
+        return blocks != null && blocks.blocks.contains(key);
+    }
+    
+    private static final class WorldBlocks {
+        private final LongHashSet blocks = new LongHashSet();
+        private final LongHashSet chunks = new LongHashSet();
+    }
+}
@@ -0,0 +1,53 @@
+package com.jonas.gemplugin.utils;
+
+/**
+ * Packs block and chunk coordinates into single longs, so block sets and maps can be keyed
+ * by primitives instead of Location objects or strings.
+ * Block layout (as used by the game itself): 26 bits x, 26 bits z, 12 bits y.
+ */
+public final class BlockKey {
+    
+    private BlockKey() {
+    }
+    
+    /**
+     * Pack block coordinates
+     */
+    public static long pack(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+    
+    public static int x(long key) {
+        return (int) (key >> 38);
+    }
+    
+    public static int y(long key) {
+        return (int) (key << 52 >> 52);
+    }
+    
+    public static int z(long key) {
+        return (int) (key << 26 >> 38);
+    }
+    
+    /**
+     * Pack chunk coordinates
+     */
+    public static long chunk(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * Get the key of the chunk containing a packed block
+     */
+    public static long chunkOf(long key) {
+        return chunk(x(key) >> 4, z(key) >> 4);
+    }
+    
+    public static int chunkX(long chunkKey) {
+        return (int) (chunkKey >> 32);
+    }
+    
+    public static int chunkZ(long chunkKey) {
+        return (int) chunkKey;
+    }
+}
@@ -1,5 +1,8 @@
 package com.jonas.gemplugin.utils;
 
+import net.kyori.adventure.bossbar.BossBar;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
 import org.bukkit.entity.Player;
 
 /**
@@ -7,6 +10,27 @@ import org.bukkit.entity.Player;
  */
 public class CooldownDisplay {
     
+    /**
+     * Where cooldowns are shown to the player
+     */
+    public enum Mode {
+        XP_BAR,
+        ACTION_BAR,
+        BOSS_BAR;
+        
+        /**
+         * Parse a config value such as "xp-bar", falling back to the XP bar
+         */
+        public static Mode fromConfig(String value) {
+            if (value == null) return XP_BAR;
+            try {
+                return valueOf(value.trim().toUpperCase().replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                return XP_BAR;
+            }
+        }
+    }
+    
     /**
      * Update the XP bar to show cooldown progress
      */
@@ -30,5 +54,43 @@ public class CooldownDisplay {
         player.setExp(0);
     }
     
-
+    /**
+     * Show the remaining cooldown in the action bar
+     */
+    public static void updateActionBar(Player player, String label, int secondsRemaining) {
+        player.sendActionBar(cooldownText(label, secondsRemaining));
+    }
+    
+    /**
+     * Clear the action bar cooldown display
+     */
+    public static void clearActionBar(Player player) {
+        player.sendActionBar(Component.empty());
+    }
+    
+    /**
+     * Create a boss bar for showing a cooldown
+     */
+    public static BossBar createBossBar(String label, int secondsRemaining, int maxSeconds) {
+        return BossBar.bossBar(cooldownText(label, secondsRemaining), progress(secondsRemaining, maxSeconds),
+                BossBar.Color.YELLOW, BossBar.Overlay.PROGRESS);
+    }
+    
+    /**
+     * Update a cooldown boss bar's text and progress
+     */
+    public static void updateBossBar(BossBar bar, String label, int secondsRemaining, int maxSeconds) {
+        bar.name(cooldownText(label, secondsRemaining));
+        bar.progress(progress(secondsRemaining, maxSeconds));
+    }
+    
+    private static Component cooldownText(String label, int secondsRemaining) {
+        return Component.text(label + " cooldown: ", NamedTextColor.GOLD)
+                .append(Component.text(secondsRemaining + "s", NamedTextColor.YELLOW));
+    }
+    
+    private static float progress(int secondsRemaining, int maxSeconds) {
+        if (maxSeconds <= 0) return 0;
+        return Math.max(0, Math.min(1, (float) secondsRemaining / maxSeconds));
+    }
 }
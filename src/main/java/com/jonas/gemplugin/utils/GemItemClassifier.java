@@ -0,0 +1,125 @@
+package com.jonas.gemplugin.utils;
+
+import io.papermc.paper.persistence.PersistentDataContainerView;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.persistence.PersistentDataType;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+/**
+ * Identifies gem items without copying their ItemMeta.
+ * Reads go through the read-only PDC view on ItemStack, after a material prefilter
+ * that rejects anything that is not one of the gem materials.
+ */
+public class GemItemClassifier {
+    
+    /**
+     * Gem ID returned for items that are not gems
+     */
+    public static final int NO_GEM = 0;
+    
+    private final NamespacedKey gemIdKey;
+    private final NamespacedKey legacyTypeKey;
+    private final NamespacedKey timestampKey;
+    private final ToIntFunction<String> legacyIdResolver;
+    private final Set<Material> gemMaterials;
+    
+    /**
+     * @param gemIdKey         key holding the numeric gem ID (BYTE)
+     * @param legacyTypeKey    key holding the gem type name (STRING) on items created before numeric IDs
+     * @param timestampKey     key holding the gem timestamp (LONG)
+     * @param legacyIdResolver maps a legacy gem type name to its numeric ID, or {@link #NO_GEM}
+     * @param gemMaterials     materials used by registered gems
+     */
+    public GemItemClassifier(NamespacedKey gemIdKey, NamespacedKey legacyTypeKey, NamespacedKey timestampKey,
+                             ToIntFunction<String> legacyIdResolver, Collection<Material> gemMaterials) {
+        this.gemIdKey = gemIdKey;
+        this.legacyTypeKey = legacyTypeKey;
+        this.timestampKey = timestampKey;
+        this.legacyIdResolver = legacyIdResolver;
+        this.gemMaterials = gemMaterials.isEmpty() ? EnumSet.noneOf(Material.class) : EnumSet.copyOf(gemMaterials);
+    }
+    
+    /**
+     * Accept items of a material used by a gem registered after construction
+     */
+    public void addGemMaterial(Material material) {
+        gemMaterials.add(material);
+    }
+    
+    /**
+     * Check if an item is a gem
+     */
+    public boolean isGem(ItemStack item) {
+        return getGemId(item) != NO_GEM;
+    }
+    
+    /**
+     * Get the numeric gem ID of an item, or {@link #NO_GEM} if it is not a gem
+     */
+    public int getGemId(ItemStack item) {
+        if (!isCandidate(item)) return NO_GEM;
+        return readGemId(item.getPersistentDataContainer());
+    }
+    
+    /**
+     * Get the timestamp of a gem item.
+     * Returns Long.MAX_VALUE for non-gems and Long.MIN_VALUE for gems without a timestamp.
+     */
+    public long getTimestamp(ItemStack item) {
+        GemInfo info = classify(item);
+        return info != null ? info.timestamp() : Long.MAX_VALUE;
+    }
+    
+    /**
+     * Read the gem ID and timestamp of an item in one pass
+     *
+     * @return the gem info, or null if the item is not a gem
+     */
+    public GemInfo classify(ItemStack item) {
+        if (!isCandidate(item)) return null;
+        
+        PersistentDataContainerView pdc = item.getPersistentDataContainer();
+        Byte id = pdc.get(gemIdKey, PersistentDataType.BYTE);
+        boolean legacy = id == null;
+        int gemId = legacy ? readLegacyGemId(pdc) : id;
+        if (gemId == NO_GEM) return null;
+        
+        // If no timestamp, treat as very old (should be kept)
+        Long timestamp = pdc.get(timestampKey, PersistentDataType.LONG);
+        return new GemInfo(gemId, timestamp != null ? timestamp : Long.MIN_VALUE, legacy);
+    }
+    
+    private int readGemId(PersistentDataContainerView pdc) {
+        Byte id = pdc.get(gemIdKey, PersistentDataType.BYTE);
+        if (id != null) return id;
+        return readLegacyGemId(pdc);
+    }
+    
+    private int readLegacyGemId(PersistentDataContainerView pdc) {
+        String gemType = pdc.get(legacyTypeKey, PersistentDataType.STRING);
+        return gemType != null ? legacyIdResolver.applyAsInt(gemType) : NO_GEM;
+    }
+    
+    /**
+     * Cheap checks that rule out most items before touching the PDC
+     */
+    private boolean isCandidate(ItemStack item) {
+        return item != null && gemMaterials.contains(item.getType()) && item.hasItemMeta();
+    }
+    
+    /**
+     * Gem ID and timestamp read from a gem item
+     *
+     * @param id        numeric gem ID
+     * @param timestamp gem timestamp, or Long.MIN_VALUE if the item has none
+     * @param legacy    true if the item still carries the old string type tag
+     */
+    public record GemInfo(int id, long timestamp, boolean legacy) {
+    }
+}
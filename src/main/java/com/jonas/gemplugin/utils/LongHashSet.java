@@ -0,0 +1,172 @@
+package com.jonas.gemplugin.utils;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Open-addressing hash set of primitive longs (linear probing), so lookups neither box
+ * nor allocate. Zero is stored out of band, since it marks free slots.
+ * Not thread-safe.
+ */
+public class LongHashSet {
+    
+    private static final int MIN_CAPACITY = 16;
+    
+    private long[] keys;
+    private int mask;
+    private int size;
+    private boolean containsZero;
+    
+    public LongHashSet() {
+        this(MIN_CAPACITY);
+    }
+    
+    public LongHashSet(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expected) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        mask = capacity - 1;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public boolean contains(long key) {
+        if (key == 0) return containsZero;
+        
+        int index = slot(key);
+        long current;
+        while ((current = keys[index]) != 0) {
+            if (current == key) return true;
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+    
+    /**
+     * @return true if the key was not already present
+     */
+    public boolean add(long key) {
+        if (key == 0) {
+            if (containsZero) return false;
+            containsZero = true;
+            size++;
+            return true;
+        }
+        
+        int index = slot(key);
+        long current;
+        while ((current = keys[index]) != 0) {
+            if (current == key) return false;
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        if (++size > keys.length * 3 / 4) {
+            rehash(keys.length << 1);
+        }
+        return true;
+    }
+    
+    /**
+     * @return true if the key was present
+     */
+    public boolean remove(long key) {
+        if (key == 0) {
+            if (!containsZero) return false;
+            containsZero = false;
+            size--;
+            return true;
+        }
+        
+        int index = slot(key);
+        long current;
+        while ((current = keys[index]) != 0) {
+            if (current == key) {
+                shiftBack(index);
+                size--;
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+    
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        containsZero = false;
+        size = 0;
+    }
+    
+    public long[] toArray() {
+        long[] result = new long[size];
+        int index = 0;
+        if (containsZero) {
+            result[index++] = 0L;
+        }
+        for (long key : keys) {
+            if (key != 0) {
+                result[index++] = key;
+            }
+        }
+        return result;
+    }
+    
+    public void forEach(LongConsumer action) {
+        if (containsZero) {
+            action.accept(0L);
+        }
+        for (long key : keys) {
+            if (key != 0) {
+                action.accept(key);
+            }
+        }
+    }
+    
+    /**
+     * Close the gap left at a slot by moving later keys of the probe run back,
+     * so lookups never need tombstones
+     */
+    private void shiftBack(int gap) {
+        int index = gap;
+        while (true) {
+            index = (index + 1) & mask;
+            long key = keys[index];
+            if (key == 0) break;
+            
+            int home = slot(key);
+            // Move the key if its home slot is not between the gap and its current slot
+            if (((index - home) & mask) >= ((index - gap) & mask)) {
+                keys[gap] = key;
+                gap = index;
+            }
+        }
+        keys[gap] = 0;
+    }
+    
+    private void rehash(int capacity) {
+        long[] old = keys;
+        keys = new long[capacity];
+        mask = capacity - 1;
+        for (long key : old) {
+            if (key != 0) {
+                int index = slot(key);
+                while (keys[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+            }
+        }
+    }
+    
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
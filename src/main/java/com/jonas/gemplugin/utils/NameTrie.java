@@ -0,0 +1,125 @@
+package com.jonas.gemplugin.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * Case-insensitive prefix trie from player names to values, for tab completion.
+ * Children are kept in small sorted arrays (names only use a few dozen characters),
+ * so completions come out in alphabetical order without sorting.
+ * Not thread-safe.
+ */
+public class NameTrie<V> {
+    
+    private final Node<V> root = new Node<>();
+    private int size;
+    
+    /**
+     * Get the number of names in the trie
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Look up the value stored for an exact name
+     */
+    public V get(String name) {
+        Node<V> node = find(name);
+        return node != null ? node.value : null;
+    }
+    
+    /**
+     * Store a value under a name, replacing any previous value
+     */
+    public void put(String name, V value) {
+        Node<V> node = root;
+        String key = name.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < key.length(); i++) {
+            node = node.childOrCreate(key.charAt(i));
+        }
+        if (node.value == null) {
+            size++;
+        }
+        node.value = value;
+    }
+    
+    /**
+     * Remove a name. Emptied nodes are left in place; renames are rare enough not to matter.
+     */
+    public V remove(String name) {
+        Node<V> node = find(name);
+        if (node == null || node.value == null) return null;
+        V previous = node.value;
+        node.value = null;
+        size--;
+        return previous;
+    }
+    
+    /**
+     * Collect up to limit values whose names start with a prefix, in name order
+     *
+     * @param filter only values passing it are collected
+     */
+    public List<V> complete(String prefix, int limit, Predicate<V> filter) {
+        List<V> result = new ArrayList<>();
+        Node<V> node = find(prefix);
+        if (node != null) {
+            collect(node, limit, filter, result);
+        }
+        return result;
+    }
+    
+    private void collect(Node<V> node, int limit, Predicate<V> filter, List<V> result) {
+        if (node.value != null && filter.test(node.value)) {
+            result.add(node.value);
+        }
+        for (int i = 0; i < node.count && result.size() < limit; i++) {
+            collect(node.children[i], limit, filter, result);
+        }
+    }
+    
+    private Node<V> find(String name) {
+        Node<V> node = root;
+        String key = name.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.child(key.charAt(i));
+        }
+        return node;
+    }
+    
+    private static final class Node<V> {
+        private char[] keys = new char[0];
+        @SuppressWarnings("unchecked")
+        private Node<V>[] children = new Node[0];
+        private int count;
+        private V value;
+        
+        private Node<V> child(char c) {
+            int index = Arrays.binarySearch(keys, 0, count, c);
+            return index >= 0 ? children[index] : null;
+        }
+        
+        private Node<V> childOrCreate(char c) {
+            int index = Arrays.binarySearch(keys, 0, count, c);
+            if (index >= 0) return children[index];
+            
+            int insert = -index - 1;
+            if (count == keys.length) {
+                int capacity = Math.max(2, count * 2);
+                keys = Arrays.copyOf(keys, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(keys, insert, keys, insert + 1, count - insert);
+            System.arraycopy(children, insert, children, insert + 1, count - insert);
+            Node<V> node = new Node<>();
+            keys[insert] = c;
+            children[insert] = node;
+            count++;
+            return node;
+        }
+    }
+}
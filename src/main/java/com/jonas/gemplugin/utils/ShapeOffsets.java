@@ -0,0 +1,64 @@
+package com.jonas.gemplugin.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Block offset tables for common shapes, computed once per shape and radius and cached.
+ * A table is a flat int[] of (dx, dy, dz) triples relative to the centre block, so callers
+ * walk it with no per-block math. Tables are shared; do not modify them.
+ */
+public final class ShapeOffsets {
+    
+    public enum Shape {
+        // Blocks within half a block of the sphere's surface
+        SHELL,
+        SPHERE,
+        CUBE,
+        // Vertical cylinder with the same radius and half-height
+        CYLINDER
+    }
+    
+    private static final Map<Long, int[]> CACHE = new ConcurrentHashMap<>();
+    
+    private ShapeOffsets() {
+    }
+    
+    /**
+     * Get the offsets of a shape, in x, y, z loop order
+     */
+    public static int[] get(Shape shape, int radius) {
+        long key = ((long) shape.ordinal() << 32) | radius;
+        return CACHE.computeIfAbsent(key, k -> compute(shape, radius));
+    }
+    
+    private static int[] compute(Shape shape, int radius) {
+        // Compare squared distances against squared bounds instead of taking roots
+        double outer = (radius + 0.5) * (radius + 0.5);
+        double inner = radius > 0 ? (radius - 0.5) * (radius - 0.5) : 0;
+        int side = 2 * radius + 1;
+        int[] offsets = new int[side * side * side * 3];
+        int count = 0;
+        
+        for (int x = -radius; x <= radius; x++) {
+            for (int y = -radius; y <= radius; y++) {
+                for (int z = -radius; z <= radius; z++) {
+                    int distance = x * x + y * y + z * z;
+                    boolean inside = switch (shape) {
+                        case SHELL -> distance >= inner && distance <= outer;
+                        case SPHERE -> distance <= outer;
+                        case CUBE -> true;
+                        case CYLINDER -> x * x + z * z <= outer;
+                    };
+                    if (inside) {
+                        offsets[count++] = x;
+                        offsets[count++] = y;
+                        offsets[count++] = z;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+}
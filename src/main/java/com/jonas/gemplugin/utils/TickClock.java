@@ -0,0 +1,33 @@
+package com.jonas.gemplugin.utils;
+
+import org.bukkit.Bukkit;
+
+/**
+ * Monotonic clock measured in server ticks.
+ * Cooldowns and effect ownership compare tick numbers, so they stay in step with
+ * gameplay when the server lags instead of following the wall clock.
+ */
+public interface TickClock {
+    
+    int TICKS_PER_SECOND = 20;
+    long MILLIS_PER_TICK = 50L;
+    
+    /**
+     * Get the current tick
+     */
+    long currentTick();
+    
+    /**
+     * Clock backed by the server's tick counter
+     */
+    static TickClock server() {
+        return Bukkit::getCurrentTick;
+    }
+    
+    /**
+     * Convert seconds to ticks
+     */
+    static long seconds(int seconds) {
+        return seconds * (long) TICKS_PER_SECOND;
+    }
+}
@@ -0,0 +1,233 @@
+package com.jonas.gemplugin.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hierarchical timing wheel for one-shot expirations, advanced once per server tick.
+ * Four levels of 64 slots cover 2^24 ticks (about nine days); longer delays are parked
+ * in the top level and re-cascaded until they come into range.
+ * Scheduling, rescheduling and cancelling are O(1). Timers can belong to an owner
+ * (a player) so that all of them are cancelled together when the player leaves.
+ * Not thread-safe; use from the main thread only.
+ */
+public class TimingWheel {
+    
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_SPAN = 1L << (SLOT_BITS * LEVELS);
+    
+    // Sentinel heads of circular slot lists
+    private final Timer[][] wheel = new Timer[LEVELS][SLOTS];
+    private final Map<UUID, Timer> ownerHeads = new HashMap<>();
+    private final Logger logger;
+    private long now;
+    
+    public TimingWheel(Logger logger) {
+        this.logger = logger;
+        for (Timer[] level : wheel) {
+            for (int i = 0; i < SLOTS; i++) {
+                Timer sentinel = new Timer(null, null);
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+                level[i] = sentinel;
+            }
+        }
+    }
+    
+    /**
+     * Get the number of ticks the wheel has advanced
+     */
+    public long currentTick() {
+        return now;
+    }
+    
+    /**
+     * Run a task after the given number of ticks (at least one)
+     *
+     * @param owner player the timer belongs to, or null
+     */
+    public Timer schedule(UUID owner, long delayTicks, Runnable task) {
+        Timer timer = new Timer(owner, task);
+        timer.expiry = now + Math.max(1L, delayTicks);
+        insert(timer);
+        if (owner != null) {
+            linkOwner(timer);
+        }
+        return timer;
+    }
+    
+    /**
+     * Move a timer to a new delay, re-arming it if it already fired or was cancelled
+     */
+    public void reschedule(Timer timer, long delayTicks) {
+        if (timer.isPending()) {
+            unlinkSlot(timer);
+        } else if (timer.owner != null) {
+            linkOwner(timer);
+        }
+        timer.expiry = now + Math.max(1L, delayTicks);
+        insert(timer);
+    }
+    
+    /**
+     * Cancel a timer
+     *
+     * @return true if the timer was still pending
+     */
+    public boolean cancel(Timer timer) {
+        if (timer == null || !timer.isPending()) return false;
+        unlinkSlot(timer);
+        unlinkOwner(timer);
+        return true;
+    }
+    
+    /**
+     * Cancel every pending timer belonging to an owner
+     */
+    public void cancelAll(UUID owner) {
+        Timer timer = ownerHeads.remove(owner);
+        while (timer != null) {
+            Timer next = timer.ownerNext;
+            unlinkSlot(timer);
+            timer.ownerPrev = null;
+            timer.ownerNext = null;
+            timer = next;
+        }
+    }
+    
+    /**
+     * Advance one tick and run the timers that are now due
+     */
+    public void advance() {
+        now++;
+        
+        // Pull the next window of each higher level down once the level below wraps
+        for (int level = 1; level < LEVELS; level++) {
+            if (((now >>> (SLOT_BITS * (level - 1))) & SLOT_MASK) != 0) break;
+            cascade(level, (int) ((now >>> (SLOT_BITS * level)) & SLOT_MASK));
+        }
+        
+        // Take timers off one at a time so tasks can safely cancel or schedule others.
+        // Nothing new can land in this slot: every insert is at least one tick ahead.
+        Timer sentinel = wheel[0][(int) (now & SLOT_MASK)];
+        while (sentinel.next != sentinel) {
+            Timer timer = sentinel.next;
+            unlinkSlot(timer);
+            if (timer.expiry > now) {
+                // Parked beyond the wheel's span; not due yet
+                insert(timer);
+            } else {
+                unlinkOwner(timer);
+                // A failing task must not keep the rest of the slot from running
+                try {
+                    timer.task.run();
+                } catch (Exception e) {
+                    logger.log(Level.SEVERE, "Timed gem expiration failed", e);
+                }
+            }
+        }
+    }
+    
+    private void cascade(int level, int slot) {
+        Timer timer = detach(wheel[level][slot]);
+        while (timer != null) {
+            Timer next = timer.next;
+            timer.prev = null;
+            timer.next = null;
+            insert(timer);
+            timer = next;
+        }
+    }
+    
+    /**
+     * Empty a slot, returning its timers as a null-terminated chain
+     */
+    private Timer detach(Timer sentinel) {
+        if (sentinel.next == sentinel) return null;
+        Timer first = sentinel.next;
+        sentinel.prev.next = null;
+        sentinel.prev = sentinel;
+        sentinel.next = sentinel;
+        return first;
+    }
+    
+    private void insert(Timer timer) {
+        long target = Math.min(timer.expiry, now + MAX_SPAN - 1);
+        long delta = target - now;
+        
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        Timer sentinel = wheel[level][(int) ((target >>> (SLOT_BITS * level)) & SLOT_MASK)];
+        
+        timer.prev = sentinel.prev;
+        timer.next = sentinel;
+        sentinel.prev.next = timer;
+        sentinel.prev = timer;
+    }
+    
+    private void unlinkSlot(Timer timer) {
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+    }
+    
+    private void linkOwner(Timer timer) {
+        Timer head = ownerHeads.put(timer.owner, timer);
+        timer.ownerPrev = null;
+        timer.ownerNext = head;
+        if (head != null) {
+            head.ownerPrev = timer;
+        }
+    }
+    
+    private void unlinkOwner(Timer timer) {
+        if (timer.owner == null) return;
+        
+        if (timer.ownerPrev != null) {
+            timer.ownerPrev.ownerNext = timer.ownerNext;
+        } else if (timer.ownerNext != null) {
+            ownerHeads.put(timer.owner, timer.ownerNext);
+        } else {
+            ownerHeads.remove(timer.owner);
+        }
+        if (timer.ownerNext != null) {
+            timer.ownerNext.ownerPrev = timer.ownerPrev;
+        }
+        timer.ownerPrev = null;
+        timer.ownerNext = null;
+    }
+    
+    /**
+     * Handle to a scheduled expiration
+     */
+    public static final class Timer {
+        private final UUID owner;
+        private final Runnable task;
+        private long expiry;
+        private Timer prev;
+        private Timer next;
+        private Timer ownerPrev;
+        private Timer ownerNext;
+        
+        private Timer(UUID owner, Runnable task) {
+            this.owner = owner;
+            this.task = task;
+        }
+        
+        /**
+         * Check if the timer is still waiting to fire
+         */
+        public boolean isPending() {
+            return next != null;
+        }
+    }
+}